@@ -0,0 +1,62 @@
+package org.anystub;
+
+import org.anystub.mgmt.BaseManagerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * stub settings for the benchmarked modes
+ * rmPassThrough - the stub only builds the key, rmAll - every call is recorded,
+ * replay - rmNew with the entry recorded in advance
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    @AnyStubId(filename = "jmh-passThrough", requestMode = RequestMode.rmPassThrough)
+    static void rmPassThrough() {
+    }
+
+    @AnyStubId(filename = "jmh-record", requestMode = RequestMode.rmAll)
+    static void rmAll() {
+    }
+
+    @AnyStubId(filename = "jmh-replay")
+    static void replay() {
+    }
+
+    static AnyStubId anyStubId(String mode) {
+        try {
+            return BenchmarkSupport.class
+                    .getDeclaredMethod(mode)
+                    .getAnnotation(AnyStubId.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("unknown mode: " + mode, e);
+        }
+    }
+
+    /**
+     * prepares a clean stub for the mode and puts it in the reactor context
+     */
+    static Context context(String mode) {
+        AnyStubId anyStubId = anyStubId(mode);
+        BaseManagerFactory.baseFromSettings(anyStubId).clear();
+        return Context.of(AnyStubId.class, anyStubId);
+    }
+
+    /**
+     * reads the body as a consumer would and releases buffers
+     */
+    static Mono<Integer> drain(Flux<DataBuffer> body) {
+        return body.map(dataBuffer -> {
+                    int count = dataBuffer.readableByteCount();
+                    DataBufferUtils.release(dataBuffer);
+                    return count;
+                })
+                .reduce(0, Integer::sum);
+    }
+}
@@ -0,0 +1,66 @@
+package org.anystub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StubClientHttpConnector.connect in pass-through, recording and replay modes
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="ConnectorBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectorBenchmark {
+
+    @Param({"rmPassThrough", "rmAll", "replay"})
+    String mode;
+
+    @Param({"100", "10240", "1048576", "10485760"})
+    int bodySize;
+
+    private final URI uri = URI.create("http://localhost:8080/benchmark");
+    private StubClientHttpConnector connector;
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        connector = new StubClientHttpConnector(new InProcessConnector(bodySize));
+        context = BenchmarkSupport.context(mode);
+        // records the entry for replay mode
+        connect();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRecords() {
+        if (mode.equals("rmAll")) {
+            context = BenchmarkSupport.context(mode);
+        }
+    }
+
+    @Benchmark
+    public Integer connect() {
+        return connector.connect(HttpMethod.GET, uri, ClientHttpRequest::setComplete)
+                .flatMap(response -> BenchmarkSupport.drain(response.getBody()))
+                .contextWrite(context)
+                .block();
+    }
+}
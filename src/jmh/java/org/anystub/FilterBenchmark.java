@@ -0,0 +1,72 @@
+package org.anystub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunctions;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StubExchangeFilterFunction.filter in pass-through, recording and replay modes
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="FilterBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"rmPassThrough", "rmAll", "replay"})
+    String mode;
+
+    @Param({"100", "10240", "1048576", "10485760"})
+    int bodySize;
+
+    private StubExchangeFilterFunction filterFunction;
+    private ExchangeFunction next;
+    private ClientRequest request;
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        filterFunction = new StubExchangeFilterFunction();
+        next = ExchangeFunctions.create(new InProcessConnector(bodySize));
+        request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost:8080/benchmark")).build();
+        context = BenchmarkSupport.context(mode);
+        // records the entry for replay mode
+        filter();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRecords() {
+        if (mode.equals("rmAll")) {
+            context = BenchmarkSupport.context(mode);
+        }
+    }
+
+    @Benchmark
+    public Integer filter() {
+        return filterFunction.filter(request, next)
+                .flatMap(response -> BenchmarkSupport.drain(response.body(BodyExtractors.toDataBuffers())))
+                .contextWrite(context)
+                .block();
+    }
+}
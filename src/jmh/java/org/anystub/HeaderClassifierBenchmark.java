@@ -0,0 +1,67 @@
+package org.anystub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Util.isHeader against String.matches(HEADER_MASK) and the precompiled HEADER_PATTERN
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="HeaderClassifierBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderClassifierBenchmark {
+
+    /**
+     * header - a typical header line
+     * json - 1 MB json body, rejected at the first character
+     * headerLike - 1 MB body which looks like a header up to the end
+     */
+    @Param({"header", "json", "headerLike"})
+    String line;
+
+    private String value;
+
+    @Setup
+    public void setup() {
+        switch (line) {
+            case "header":
+                value = "Content-Type: application/json;charset=UTF-8";
+                break;
+            case "json":
+                value = "{\"test\":\"" + "x".repeat(1024 * 1024) + "\"}";
+                break;
+            default:
+                value = "Content-Type: " + "x".repeat(1024 * 1024);
+        }
+    }
+
+    @Benchmark
+    public boolean regex() {
+        return value.matches(Util.HEADER_MASK);
+    }
+
+    @Benchmark
+    public boolean precompiled() {
+        return Util.HEADER_PATTERN.matcher(value).matches();
+    }
+
+    @Benchmark
+    public boolean classifier() {
+        return Util.isHeader(value);
+    }
+}
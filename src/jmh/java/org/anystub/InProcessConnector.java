@@ -0,0 +1,59 @@
+package org.anystub;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * in-process stand-in for a http server
+ * consumes the request and answers with a text body of the given size
+ * split in network-like chunks, so benchmarks measure the stub and not a socket
+ */
+class InProcessConnector implements ClientHttpConnector {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private final byte[] body;
+
+    InProcessConnector(int bodySize) {
+        this.body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'x');
+    }
+
+    @Override
+    public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri, Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+        MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+        return requestCallback.apply(request)
+                .then(Mono.fromSupplier(() -> {
+                    MockClientHttpResponse response = new MockClientHttpResponse(HttpStatus.OK);
+                    response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+                    response.getHeaders().setContentLength(body.length);
+                    response.setBody(chunks());
+                    return response;
+                }));
+    }
+
+    private Flux<DataBuffer> chunks() {
+        return Flux.range(0, (body.length + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .map(i -> {
+                    int offset = i * CHUNK_SIZE;
+                    return DefaultDataBufferFactory.sharedInstance
+                            .wrap(body)
+                            .readPosition(offset)
+                            .writePosition(Math.min(offset + CHUNK_SIZE, body.length));
+                });
+    }
+}
@@ -0,0 +1,88 @@
+package org.anystub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a burst of concurrent requests through StubClientHttpConnector, as PerformanceTest,
+ * with stub persistence on boundedElastic or on virtual threads (Java 21+).
+ * before Java 21 the virtual runs are skipped: they do nothing and say so on stderr
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="SchedulerBenchmark -p parallelism=1024"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"boundedElastic", "virtual"})
+    String scheduler;
+
+    @Param({"rmAll", "replay"})
+    String mode;
+
+    @Param({"64", "1024", "4096"})
+    int parallelism;
+
+    private StubClientHttpConnector connector;
+    private Context context;
+    private boolean skipped;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (scheduler.equals("virtual") && (Runtime.version().feature() < 21 || !StubSchedulers.useVirtualThreads())) {
+            System.err.println("virtual threads need Java 21+, the run is skipped");
+            skipped = true;
+            return;
+        }
+        connector = new StubClientHttpConnector(new InProcessConnector(100));
+        context = BenchmarkSupport.context(mode);
+        // records the entries for replay mode
+        burst();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRecords() {
+        if (!skipped && mode.equals("rmAll")) {
+            context = BenchmarkSupport.context(mode);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StubSchedulers.usePersistence(null);
+    }
+
+    @Benchmark
+    public Integer burst() {
+        if (skipped) {
+            return 0;
+        }
+        return Flux.range(0, parallelism)
+                .flatMap(i -> connector.connect(HttpMethod.GET, URI.create("http://localhost:8080/burst/" + i), ClientHttpRequest::setComplete)
+                        .flatMap(response -> BenchmarkSupport.drain(response.getBody())), parallelism)
+                .reduce(0, Integer::sum)
+                .contextWrite(context)
+                .block();
+    }
+}
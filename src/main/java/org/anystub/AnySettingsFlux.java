@@ -0,0 +1,73 @@
+package org.anystub;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * settings of the reactive stub which are not covered by AnySettingsHttp
+ * the annotation is looked up on the test method, then on the test class,
+ * or can be put in the reactor context, see Util.anystubContext()
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface AnySettingsFlux {
+
+    /**
+     * size of the buffers a recorded body is replayed with.
+     * 0 - the body is replayed as a single buffer
+     */
+    int chunkSize() default 0;
+
+    /**
+     * replay stored responses through StubIndex, which finds a response with a single hash lookup.
+     * applies to rmNew and rmNone modes, responses replayed from the index are not counted in Base.history()
+     */
+    boolean index() default false;
+
+    /**
+     * in rmAll mode recorded entries are appended to the stub file in batches by RecordingSink
+     * from a background thread instead of being saved by Base on the thread which completes the response.
+     * other modes replay recorded entries, so Base saves them as usual.
+     * the first entry recorded for a Base replaces the content of the file.
+     * the sink should be the only writer of the file; recorded entries are not seen by Base.history().
+     * call RecordingSink.flushShared() to wait for the written file
+     */
+    boolean recordAsync() default false;
+
+    /**
+     * size in bytes over which a recorded body is written to a side file of BodyStore
+     * and the stub keeps a reference to it. 0 - bodies are kept in the stub
+     */
+    int bodyFileThreshold() default 0;
+
+    /**
+     * recorded bodies are stored gzip-compressed when that makes them shorter, see BodyCompression.
+     * bodies over bodyFileThreshold() are kept in side files uncompressed
+     */
+    boolean compressBodies() default false;
+
+    /**
+     * the request body in the key is replaced with SHA-256 of the masked body,
+     * so the size of the key does not depend on the size of the body
+     */
+    boolean digestRequestBody() default false;
+
+    /**
+     * number of characters of the masked body kept in the key next to the digest for readability
+     */
+    int digestPreview() default 0;
+
+    /**
+     * recorded responses keep the upstream latency: time to the headers and time to the last byte
+     */
+    boolean recordLatency() default false;
+
+    /**
+     * replayed responses are delayed by the recorded latency multiplied by the scale:
+     * 0 - no delay, 1 - recorded latency. delays run on Schedulers.parallel(),
+     * so StepVerifier.withVirtualTime() can skip them
+     */
+    double latencyScale() default 0;
+}
@@ -0,0 +1,48 @@
+package org.anystub;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+/**
+ * discovers AnySettingsFlux for the running test walking the call stack
+ */
+public class AnySettingsFluxExtractor {
+
+    @AnySettingsFlux
+    private static final class Defaults {
+    }
+
+    private static final AnySettingsFlux DEFAULT = Defaults.class.getAnnotation(AnySettingsFlux.class);
+
+    private AnySettingsFluxExtractor() {
+    }
+
+    /**
+     * @return settings of the closest annotated method or class in the call stack, or default settings
+     */
+    public static AnySettingsFlux fluxSettings() {
+        return discover().orElse(DEFAULT);
+    }
+
+    public static AnySettingsFlux defaultSettings() {
+        return DEFAULT;
+    }
+
+    static Optional<AnySettingsFlux> discover() {
+        return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE)
+                .walk(frames -> frames
+                        .map(frame -> find(frame.getDeclaringClass(), frame.getMethodName()))
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .findFirst());
+    }
+
+    private static Optional<AnySettingsFlux> find(Class<?> clazz, String methodName) {
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals(methodName) && method.isAnnotationPresent(AnySettingsFlux.class)) {
+                return Optional.of(method.getAnnotation(AnySettingsFlux.class));
+            }
+        }
+        return Optional.ofNullable(clazz.getAnnotation(AnySettingsFlux.class));
+    }
+}
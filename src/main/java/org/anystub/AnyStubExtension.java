@@ -0,0 +1,26 @@
+package org.anystub;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * marks the test method running on the current thread, so that settings
+ * are discovered once per test, see SettingsRegistry, and drops them after the test.
+ * after the test the entries queued by RecordingSink are written
+ * register it with @ExtendWith(AnyStubExtension.class) or enable
+ * junit.jupiter.extensions.autodetection.enabled
+ */
+public class AnyStubExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        SettingsRegistry.enter();
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        SettingsRegistry.exit();
+        RecordingSink.flushShared();
+    }
+}
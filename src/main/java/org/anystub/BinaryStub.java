@@ -0,0 +1,378 @@
+package org.anystub;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.anystub.Util.isHeader;
+
+/**
+ * compact binary stub format, the file is memory-mapped and an entry is decoded only when it is looked up
+ * <pre>
+ * header:  int magic "ASTB", int version, int number of entries
+ * table:   per entry long hi, long lo (QueryKey of the keys), long offset of the entry; sorted by hi, lo
+ * entry:   strings keys, strings exception, strings values, byte 1 + bytes body | byte 0
+ * strings: int count, per string int length of utf-8 bytes (-1 - null) and the bytes
+ * bytes:   int length and the raw bytes
+ * </pre>
+ * a body which ends the values of a response is kept as raw bytes rather than its escaped text,
+ * a reference to BodyStore or a compressed body is kept as it is.
+ * entries whose keys have the same fingerprint are neighbours in the table, a lookup compares the keys
+ */
+public final class BinaryStub {
+
+    static final int MAGIC = 0x41535442;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12;
+    static final int SLOT_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    private BinaryStub(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a binary stub");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("unsupported binary stub version: " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+    }
+
+    /**
+     * maps the file to memory
+     *
+     * @param path binary stub
+     * @return
+     */
+    public static BinaryStub open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryStub(mapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * the binary file which accompanies a text stub: the same name with .bin extension
+     *
+     * @param textStub path to the text stub
+     * @return
+     */
+    public static Path siblingOf(Path textStub) {
+        String name = textStub.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return textStub.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".bin");
+    }
+
+    /**
+     * @return true if the binary file exists and is not older than the text stub
+     */
+    static boolean isUpToDate(Path binary, Path textStub) {
+        try {
+            if (!Files.exists(binary)) {
+                return false;
+            }
+            return !Files.exists(textStub) ||
+                    Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(textStub)) >= 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * finds the entry with binary search over the fingerprint table
+     *
+     * @param keys request keys
+     * @return the entry or null
+     */
+    public StubEntry get(List<String> keys) {
+        long offset = find(keys);
+        return offset < 0 ? null : entry(offset);
+    }
+
+    /**
+     * the same as get(keys).getValues() for a response, but the body is kept as raw bytes, see Values
+     *
+     * @param keys request keys
+     * @return stored values of the response or null
+     */
+    List<String> values(List<String> keys) {
+        long offset = find(keys);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer in = at(offset);
+        readStrings(in);
+        if (!readStrings(in).isEmpty()) {
+            return null;
+        }
+        List<String> values = readStrings(in);
+        if (in.get() == 1) {
+            byte[] body = new byte[in.getInt()];
+            in.get(body);
+            return new Values(values, body);
+        }
+        return values;
+    }
+
+    /**
+     * @return offset of the entry with the keys or -1
+     */
+    private long find(List<String> keys) {
+        QueryKey queryKey = new QueryKey(null, keys);
+        // the first slot which is not less than the fingerprint
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int slot = HEADER_SIZE + mid * SLOT_SIZE;
+            if (compare(buffer.getLong(slot), buffer.getLong(slot + 8), queryKey.hi(), queryKey.lo()) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = low; i < size; i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (compare(buffer.getLong(slot), buffer.getLong(slot + 8), queryKey.hi(), queryKey.lo()) != 0) {
+                break;
+            }
+            long offset = buffer.getLong(slot + 16);
+            if (keys.equals(readStrings(at(offset)))) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return all entries in the order of the fingerprint table
+     */
+    public List<StubEntry> entries() {
+        List<StubEntry> res = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            res.add(entry(buffer.getLong(HEADER_SIZE + i * SLOT_SIZE + 16)));
+        }
+        return res;
+    }
+
+    /**
+     * writes entries to a binary stub, an entry with the same keys as a previous one is skipped
+     *
+     * @param path    binary stub
+     * @param entries entries
+     */
+    public static void write(Path path, List<StubEntry> entries) {
+        List<Slot> slots = new ArrayList<>(entries.size());
+        List<byte[]> encoded = new ArrayList<>(entries.size());
+        for (StubEntry entry : entries) {
+            QueryKey queryKey = new QueryKey(null, entry.getKeys());
+            slots.add(new Slot(queryKey.hi(), queryKey.lo(), encoded.size()));
+            encoded.add(encode(entry));
+        }
+        // stable, so the first of entries with the same keys wins
+        slots.sort((a, b) -> compare(a.hi, a.lo, b.hi, b.lo));
+
+        List<Slot> unique = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            if (!isDuplicate(unique, slot, entries)) {
+                unique.add(slot);
+            }
+        }
+
+        long total = HEADER_SIZE + (long) unique.size() * SLOT_SIZE;
+        for (Slot slot : unique) {
+            total += encoded.get(slot.index).length;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("binary stub exceeds 2GB");
+        }
+
+        long offset = HEADER_SIZE + (long) unique.size() * SLOT_SIZE;
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(unique.size());
+            for (Slot slot : unique) {
+                out.writeLong(slot.hi);
+                out.writeLong(slot.lo);
+                out.writeLong(offset);
+                offset += encoded.get(slot.index).length;
+            }
+            for (Slot slot : unique) {
+                out.write(encoded.get(slot.index));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if a slot with the same fingerprint at the end of the list has the same keys
+     */
+    private static boolean isDuplicate(List<Slot> unique, Slot slot, List<StubEntry> entries) {
+        for (int i = unique.size() - 1; i >= 0; i--) {
+            Slot previous = unique.get(i);
+            if (compare(previous.hi, previous.lo, slot.hi, slot.lo) != 0) {
+                return false;
+            }
+            if (entries.get(previous.index).getKeys().equals(entries.get(slot.index).getKeys())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer at(long offset) {
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) offset);
+        return in;
+    }
+
+    private StubEntry entry(long offset) {
+        ByteBuffer in = at(offset);
+        List<String> keys = readStrings(in);
+        List<String> exception = readStrings(in);
+        List<String> values = readStrings(in);
+        if (in.get() == 1) {
+            byte[] body = new byte[in.getInt()];
+            in.get(body);
+            values.add(Util.bodyToString(body));
+        }
+        return new StubEntry(keys, exception, values);
+    }
+
+    private static byte[] encode(StubEntry entry) {
+        List<String> values = entry.getValues();
+        int body = bodyIndex(values);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeStrings(out, entry.getKeys());
+            writeStrings(out, entry.getException());
+            writeStrings(out, body < 0 ? values : values.subList(0, body));
+            if (body < 0) {
+                out.writeByte(0);
+            } else {
+                byte[] raw = StringUtil.recoverBinaryData(values.get(body));
+                out.writeByte(1);
+                out.writeInt(raw.length);
+                out.write(raw);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return position of the body if it is the last value of a response, otherwise -1
+     */
+    private static int bodyIndex(List<String> values) {
+        int i = 3;
+        while (i < values.size() && values.get(i) != null && (isHeader(values.get(i)) || Latency.isLatency(values.get(i)))) {
+            i++;
+        }
+        return i == values.size() - 1 && values.get(i) != null && !Util.isBodyMarker(values.get(i)) ? i : -1;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            if (s == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        int count = in.getInt();
+        List<String> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = in.getInt();
+            if (length < 0) {
+                res.add(null);
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            res.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return res;
+    }
+
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int cmp = Long.compare(hi1, hi2);
+        return cmp != 0 ? cmp : Long.compare(lo1, lo2);
+    }
+
+    /**
+     * stored values of a response which end with a raw body,
+     * ResponseTemplate takes the bytes as they are, the stored form of the body is built on demand
+     */
+    static final class Values extends AbstractList<String> {
+        private final List<String> head;
+        private final byte[] body;
+
+        Values(List<String> head, byte[] body) {
+            this.head = head;
+            this.body = body;
+        }
+
+        List<String> head() {
+            return head;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        @Override
+        public String get(int index) {
+            return index == head.size() ? Util.bodyToString(body) : head.get(index);
+        }
+
+        @Override
+        public int size() {
+            return head.size() + 1;
+        }
+    }
+
+    private static final class Slot {
+        final long hi;
+        final long lo;
+        final int index;
+
+        Slot(long hi, long lo, int index) {
+            this.hi = hi;
+            this.lo = lo;
+            this.index = index;
+        }
+    }
+}
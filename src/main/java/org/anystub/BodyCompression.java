@@ -0,0 +1,70 @@
+package org.anystub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip form of a stored body: @anystub-gzip/1 &lt;base64 of the gzip stream&gt;
+ * compressed and plain bodies can be kept in the same stub file, the marker tells them apart.
+ * the marker is versioned, so a plain body of an older stub which starts with a former marker is not decompressed
+ */
+public final class BodyCompression {
+
+    public static final String PREFIX = "@anystub-gzip/1 ";
+
+    private BodyCompression() {
+    }
+
+    /**
+     * @param body body
+     * @return compressed form of the body, or null if it is not shorter than the body
+     */
+    public static String compress(byte[] body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int encodedLength = PREFIX.length() + (bytes.size() + 2) / 3 * 4;
+        if (encodedLength >= body.length) {
+            return null;
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param value stored value
+     * @return true if the value is a compressed body
+     */
+    public static boolean isCompressed(String value) {
+        if (value == null || !value.startsWith(PREFIX) || value.length() == PREFIX.length()) {
+            return false;
+        }
+        for (int i = PREFIX.length(); i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/' || c == '=')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param value compressed body
+     * @return bytes of the body
+     */
+    public static byte[] decompress(String value) {
+        byte[] compressed = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
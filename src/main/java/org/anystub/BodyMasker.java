@@ -0,0 +1,56 @@
+package org.anystub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * masks request bodies with AnyStubId.requestMasks()
+ * the masks of an AnyStubId are compiled once and applied as SettingsUtil.maskBody does:
+ * one after another in the declared order, each replaces all its matches with "...",
+ * so a mask sees the replacements of the previous ones and recorded keys stay the same.
+ * only the compilation is saved, every mask still scans the whole body: merged into one pass
+ * the masks would not see the replacements of each other and could mask other parts of the body
+ */
+public final class BodyMasker {
+
+    public static final String MASK = "...";
+
+    private static final ConcurrentMap<AnyStubId, BodyMasker> MASKERS = new ConcurrentHashMap<>();
+
+    private final List<Pattern> patterns;
+
+    private BodyMasker(List<Pattern> patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * @param settings stub settings
+     * @return compiled masks of the settings
+     */
+    public static BodyMasker of(AnyStubId settings) {
+        return MASKERS.computeIfAbsent(settings, s -> compile(s.requestMasks()));
+    }
+
+    static BodyMasker compile(String... masks) {
+        List<Pattern> patterns = new ArrayList<>(masks.length);
+        for (String mask : masks) {
+            patterns.add(Pattern.compile(mask));
+        }
+        return new BodyMasker(List.copyOf(patterns));
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    public String mask(String body) {
+        String res = body;
+        for (Pattern pattern : patterns) {
+            res = pattern.matcher(res).replaceAll(MASK);
+        }
+        return res;
+    }
+}
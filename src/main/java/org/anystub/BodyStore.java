@@ -0,0 +1,117 @@
+package org.anystub;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * keeps large bodies out of the stub file
+ * a body is written to the bodies directory next to the stub file and is named by its sha-256,
+ * so equal bodies are stored once. the stub keeps a reference: @anystub-bodyfile/1 &lt;sha-256&gt; &lt;length&gt;.
+ * the prefix is versioned, so a plain body of an older stub which starts with a former marker is not read as a reference.
+ * a stored body is memory-mapped when the entry is replayed
+ */
+public final class BodyStore {
+
+    public static final String REFERENCE_PREFIX = "@anystub-bodyfile/1 ";
+    public static final String DIRECTORY = "bodies";
+
+    private static final int HASH_LENGTH = 64;
+
+    private BodyStore() {
+    }
+
+    /**
+     * stores the body if it is missing
+     *
+     * @param stubFilePath path to the stub file
+     * @param body         body
+     * @return reference to the stored body
+     */
+    public static String write(String stubFilePath, byte[] body) {
+        String hash = sha256(body);
+        Path directory = directoryOf(stubFilePath);
+        Path file = directory.resolve(hash);
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(directory);
+                Path temp = Files.createTempFile(directory, hash, ".tmp");
+                Files.write(temp, body);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return REFERENCE_PREFIX + hash + " " + body.length;
+    }
+
+    /**
+     * @param value stored value
+     * @return true if the value refers to a stored body
+     */
+    public static boolean isReference(String value) {
+        if (value == null || !value.startsWith(REFERENCE_PREFIX)) {
+            return false;
+        }
+        int hashEnd = REFERENCE_PREFIX.length() + HASH_LENGTH;
+        if (value.length() < hashEnd + 2 || value.charAt(hashEnd) != ' ') {
+            return false;
+        }
+        for (int i = REFERENCE_PREFIX.length(); i < hashEnd; i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        for (int i = hashEnd + 1; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * maps the stored body to memory
+     *
+     * @param stubFilePath path to the stub file
+     * @param reference    reference to the body
+     * @return read-only buffer with the body
+     */
+    public static ByteBuffer map(String stubFilePath, String reference) {
+        String hash = reference.substring(REFERENCE_PREFIX.length(), REFERENCE_PREFIX.length() + HASH_LENGTH);
+        Path file = directoryOf(stubFilePath).resolve(hash);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path directoryOf(String stubFilePath) {
+        Path parent = Paths.get(stubFilePath).toAbsolutePath().getParent();
+        return parent.resolve(DIRECTORY);
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder res = new StringBuilder(HASH_LENGTH);
+            for (byte b : digest) {
+                res.append(Character.forDigit((b >> 4) & 0xf, 16));
+                res.append(Character.forDigit(b & 0xf, 16));
+            }
+            return res.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.anystub;
+
+import org.anystub.mgmt.BaseManagerFactory;
+import reactor.util.context.ContextView;
+
+/**
+ * stub settings of a single exchange
+ * a setting is taken from the reactor context or discovered on first use and then reused,
+ * so discovery runs at most once per subscription and only when the context does not carry the setting
+ */
+final class ExchangeSettings {
+    private final ContextView ctx;
+
+    private AnyStubId anyStubId;
+    private boolean anyStubIdResolved;
+    private AnySettingsHttp settingsHttp;
+    private AnySettingsFlux settingsFlux;
+    private Base base;
+
+    ExchangeSettings(ContextView ctx) {
+        this.ctx = ctx;
+    }
+
+    AnyStubId anyStubId() {
+        if (!anyStubIdResolved) {
+            anyStubId = Util.extractOptions(ctx);
+            anyStubIdResolved = true;
+        }
+        return anyStubId;
+    }
+
+    AnySettingsHttp settingsHttp() {
+        if (settingsHttp == null) {
+            settingsHttp = Util.extractHttpOptions(ctx);
+        }
+        return settingsHttp;
+    }
+
+    AnySettingsFlux settingsFlux() {
+        if (settingsFlux == null) {
+            settingsFlux = Util.extractFluxOptions(ctx);
+        }
+        return settingsFlux;
+    }
+
+    /**
+     * replay goes through StubIndex when it is enabled and the stub replays stored responses
+     */
+    boolean indexed() {
+        if (!settingsFlux().index()) {
+            return false;
+        }
+        AnyStubId id = anyStubId();
+        RequestMode mode = id != null ? id.requestMode() : RequestMode.rmNew;
+        return mode == RequestMode.rmNew || mode == RequestMode.rmNone;
+    }
+
+    /**
+     * the stub of the discovered settings, or the one BaseManagerFactory locates by default
+     */
+    Base base() {
+        if (base == null) {
+            AnyStubId id = anyStubId();
+            base = id != null ? BaseManagerFactory.baseFromSettings(id) : BaseManagerFactory.locate();
+        }
+        return base;
+    }
+}
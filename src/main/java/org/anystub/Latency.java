@@ -0,0 +1,119 @@
+package org.anystub;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * upstream latency of a recorded response: time to the headers and time to the last byte of the body.
+ * it is stored after the headers of the response as
+ * <pre>
+ * &#64;anystub-latency: &lt;ms to headers&gt; &lt;ms to last byte&gt;
+ * </pre>
+ * '@' is not allowed in a header name, so the line does not clash with a header of the upstream.
+ * see AnySettingsFlux.recordLatency() and latencyScale()
+ */
+final class Latency {
+
+    static final String NAME = "@anystub-latency";
+    static final Latency NONE = new Latency(0, 0);
+
+    private static final String PREFIX = NAME + ": ";
+
+    private final long toHeadersNanos;
+    private final long toLastByteNanos;
+
+    Latency(long toHeadersNanos, long toLastByteNanos) {
+        this.toHeadersNanos = toHeadersNanos;
+        this.toLastByteNanos = Math.max(toHeadersNanos, toLastByteNanos);
+    }
+
+    /**
+     * measures the time from subscription to the response and to the last byte of its body,
+     * the latency is added to the values before the body
+     *
+     * @param response upstream response
+     * @param encode   encodes the response, it runs the callback when the body is read till the last byte,
+     *                 before the body is stored. without the callback the encoded values stop the time
+     * @return encoded values with the latency
+     */
+    static <T> Mono<Iterable<String>> measure(Mono<T> response, BiFunction<T, Runnable, Mono<Iterable<String>>> encode) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return response.flatMap(value -> {
+                long toHeaders = System.nanoTime() - started;
+                AtomicLong toLastByte = new AtomicLong(-1);
+                return encode.apply(value, () -> toLastByte.compareAndSet(-1, System.nanoTime() - started))
+                        .map(values -> {
+                            toLastByte.compareAndSet(-1, System.nanoTime() - started);
+                            return new Latency(toHeaders, toLastByte.get()).addTo(values);
+                        });
+            });
+        });
+    }
+
+    /**
+     * @param header stored header
+     * @return true if it is the stored latency
+     */
+    static boolean isLatency(String header) {
+        return header.startsWith(PREFIX);
+    }
+
+    static Latency parse(String header) {
+        String[] parts = header.substring(PREFIX.length()).trim().split(" ");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("malformed latency: " + header);
+        }
+        return new Latency(millisToNanos(parts[0]), millisToNanos(parts[1]));
+    }
+
+    /**
+     * @param scale 0 - no delay, 1 - recorded latency
+     * @return delay of the response headers
+     */
+    Duration headersDelay(double scale) {
+        return scaled(toHeadersNanos, scale);
+    }
+
+    /**
+     * @param scale 0 - no delay, 1 - recorded latency
+     * @return delay of the body after the headers
+     */
+    Duration bodyDelay(double scale) {
+        return scaled(toLastByteNanos - toHeadersNanos, scale);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s%.3f %.3f", PREFIX, toHeadersNanos / 1e6, toLastByteNanos / 1e6);
+    }
+
+    /**
+     * inserts the latency before the body, values of a missing response are left as they are
+     */
+    private Iterable<String> addTo(Iterable<String> values) {
+        List<String> res = new ArrayList<>();
+        values.forEach(res::add);
+        if (res.size() > 3) {
+            res.add(res.size() - 1, toString());
+        }
+        return res;
+    }
+
+    private static Duration scaled(long nanos, double scale) {
+        if (scale <= 0 || nanos <= 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) (nanos * scale));
+    }
+
+    private static long millisToNanos(String millis) {
+        return (long) (Double.parseDouble(millis) * 1e6);
+    }
+}
@@ -0,0 +1,64 @@
+package org.anystub;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * publishes stub metrics to a MeterRegistry:
+ * counter anystub.requests and timer anystub.phase tagged with file, mode and outcome or phase.
+ * the file tag is the name of the stub file without its directory, pass fileTag to tag it otherwise.
+ * micrometer-core is an optional dependency, add it to use the class
+ * <pre>
+ * StubMetrics.use(new MicrometerStubMetrics(registry));
+ * </pre>
+ */
+public class MicrometerStubMetrics implements StubMetrics {
+
+    public static final String REQUESTS = "anystub.requests";
+    public static final String PHASES = "anystub.phase";
+
+    private final MeterRegistry registry;
+    private final Function<String, String> fileTag;
+
+    public MicrometerStubMetrics(MeterRegistry registry) {
+        this(registry, MicrometerStubMetrics::fileName);
+    }
+
+    /**
+     * @param fileTag makes the file tag from the stub file path, keep the number of its values small
+     */
+    public MicrometerStubMetrics(MeterRegistry registry, Function<String, String> fileTag) {
+        this.registry = registry;
+        this.fileTag = fileTag;
+    }
+
+    @Override
+    public void request(String filePath, RequestMode mode, Outcome outcome) {
+        registry.counter(REQUESTS, tags(filePath, mode).and("outcome", outcome.name().toLowerCase(Locale.ROOT)))
+                .increment();
+    }
+
+    @Override
+    public void time(String filePath, RequestMode mode, Phase phase, long nanos) {
+        registry.timer(PHASES, tags(filePath, mode).and("phase", phase.name().toLowerCase(Locale.ROOT)))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Tags tags(String filePath, RequestMode mode) {
+        return Tags.of("file", String.valueOf(fileTag.apply(filePath)), "mode", String.valueOf(mode));
+    }
+
+    static String fileName(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        Path name = Paths.get(filePath).getFileName();
+        return name == null ? filePath : name.toString();
+    }
+}
@@ -1,16 +1,41 @@
 package org.anystub;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
-class QueryKey {
-    String filename;
-    List<String> keys;
+/**
+ * immutable key of a request: stub-filename+all+fields
+ * <p>
+ * keeps only a 128-bit fingerprint (murmur3 x64 128 over the characters)
+ * which is computed once in the constructor, so hashCode and equals cost O(1)
+ * regardless of the size of the request body, and the key does not retain the body
+ */
+final class QueryKey {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long hi;
+    private final long lo;
 
     public QueryKey(String filename, List<String> keys) {
-        this.filename = filename;
-        this.keys = keys;
+        Hasher hasher = new Hasher();
+        hasher.put(filename);
+        if (keys != null) {
+            hasher.putLength(keys.size());
+            for (String key : keys) {
+                hasher.put(key);
+            }
+        }
+        hasher.finish();
+        this.hi = hasher.h1;
+        this.lo = hasher.h2;
+    }
+
+    long hi() {
+        return hi;
+    }
+
+    long lo() {
+        return lo;
     }
 
     @Override
@@ -20,14 +45,108 @@ class QueryKey {
 
         QueryKey queryKey = (QueryKey) o;
 
-        if (!Objects.equals(filename, queryKey.filename)) return false;
-        return keys.equals(queryKey.keys);
+        return hi == queryKey.hi && lo == queryKey.lo;
     }
 
     @Override
     public int hashCode() {
-        int result = filename != null ? filename.hashCode() : 0;
-        result = 31 * result + (keys != null ? Arrays.hashCode(keys.toArray(new String[0])) : 0);
-        return result;
+        return (int) (lo ^ (lo >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+
+    /**
+     * streams characters in 16-byte blocks
+     * each string is prefixed with its length so that ["ab", "c"] and ["a", "bc"] differ
+     */
+    private static final class Hasher {
+        long h1 = 0;
+        long h2 = 0;
+        private long k1 = 0;
+        private long k2 = 0;
+        private int chars = 0;
+        private long total = 0;
+
+        void put(String s) {
+            if (s == null) {
+                putLength(-1);
+                return;
+            }
+            putLength(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                putChar(s.charAt(i));
+            }
+        }
+
+        void putLength(int length) {
+            putChar((char) (length >>> 16));
+            putChar((char) length);
+        }
+
+        private void putChar(char c) {
+            if (chars < 4) {
+                k1 = (k1 << 16) | c;
+            } else {
+                k2 = (k2 << 16) | c;
+            }
+            total++;
+            if (++chars == 8) {
+                mix();
+                k1 = 0;
+                k2 = 0;
+                chars = 0;
+            }
+        }
+
+        private void mix() {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        void finish() {
+            if (chars > 0) {
+                h1 ^= mixK1(k1);
+                h2 ^= mixK2(k2);
+            }
+            h1 ^= total;
+            h2 ^= total;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+        }
+
+        private static long mixK1(long k) {
+            k *= C1;
+            k = Long.rotateLeft(k, 31);
+            return k * C2;
+        }
+
+        private static long mixK2(long k) {
+            k *= C2;
+            k = Long.rotateLeft(k, 33);
+            return k * C1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
     }
 }
@@ -0,0 +1,315 @@
+package org.anystub;
+
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writes recorded entries to stub files from a background thread
+ * entries are queued by the recording exchange and appended in batches, one write per file per batch.
+ * the queue is bounded and a caller never blocks on it: when it is full record(filePath, key, encoded)
+ * retries every 10 ms without holding a thread and fails with IllegalStateException after overflowTimeout,
+ * record(filePath, entry) fails at once.
+ * close() writes everything queued before it returns, the shared sink is closed on JVM shutdown
+ * <p>
+ * the sink appends to the file, so it should be the only writer of the file,
+ * see AnySettingsFlux.recordAsync(). an entry recorded for a Base, record(base, key, encoded),
+ * replaces the content of the file when it is the first one written for that Base,
+ * so recording a stub again does not keep the entries of the previous run
+ */
+public final class RecordingSink implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final Duration DEFAULT_OVERFLOW_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Duration OVERFLOW_RETRY = Duration.ofMillis(10);
+
+    private static volatile RecordingSink shared;
+
+    private final BlockingQueue<Record> queue;
+    private final int batchSize;
+    private final Duration overflowTimeout;
+    private final Thread writer;
+
+    private final Object lock = new Object();
+    private long queued = 0;
+    private long written = 0;
+    private boolean closed = false;
+    private RuntimeException failure;
+    // the Base whose entries the file holds, used by the writer thread only
+    private final Map<String, Base> sessions = new HashMap<>();
+
+    public RecordingSink() {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param capacity  max number of queued entries
+     * @param batchSize max number of entries written at once
+     */
+    public RecordingSink(int capacity, int batchSize) {
+        this(capacity, batchSize, DEFAULT_OVERFLOW_TIMEOUT);
+    }
+
+    /**
+     * @param capacity        max number of queued entries
+     * @param batchSize       max number of entries written at once
+     * @param overflowTimeout how long a recorded response waits for a place in the full queue
+     */
+    public RecordingSink(int capacity, int batchSize, Duration overflowTimeout) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("capacity and batchSize should be positive");
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowTimeout = overflowTimeout;
+        this.writer = new Thread(this::run, "anystub-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return the sink used by the stubs, created on first use
+     */
+    public static RecordingSink shared() {
+        RecordingSink sink = shared;
+        if (sink == null) {
+            synchronized (RecordingSink.class) {
+                sink = shared;
+                if (sink == null) {
+                    sink = new RecordingSink();
+                    Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "anystub-recorder-shutdown"));
+                    shared = sink;
+                }
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * flushes the shared sink if it is created
+     */
+    public static void flushShared() {
+        RecordingSink sink = shared;
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * queues the entry to be appended to the stub file if there is a place in the queue
+     *
+     * @param filePath stub file
+     * @param entry    recorded entry
+     * @return false if the queue is full
+     */
+    public boolean offer(String filePath, StubEntry entry) {
+        return offer(new Record(filePath, null, entry));
+    }
+
+    /**
+     * queues the entry to be appended to the stub file
+     *
+     * @param filePath stub file
+     * @param entry    recorded entry
+     * @throws IllegalStateException if the queue is full
+     */
+    public void record(String filePath, StubEntry entry) {
+        if (!offer(filePath, entry)) {
+            throw new IllegalStateException("recording queue is full");
+        }
+    }
+
+    /**
+     * queues the values of a recorded response, or the exception if the response fails
+     *
+     * @param filePath stub file
+     * @param key      request key
+     * @param encoded  stored values of the response
+     * @return encoded
+     */
+    public Mono<Iterable<String>> record(String filePath, List<String> key, Mono<Iterable<String>> encoded) {
+        return record(filePath, null, key, encoded);
+    }
+
+    /**
+     * queues the values of a recorded response to the stub file of the base,
+     * the first entry written for the base replaces the content of the file
+     *
+     * @param base    stub
+     * @param key     request key
+     * @param encoded stored values of the response
+     * @return encoded
+     */
+    public Mono<Iterable<String>> record(Base base, List<String> key, Mono<Iterable<String>> encoded) {
+        return record(base.getFilePath(), base, key, encoded);
+    }
+
+    private Mono<Iterable<String>> record(String filePath, Base base, List<String> key, Mono<Iterable<String>> encoded) {
+        return encoded
+                .flatMap(values -> enqueue(new Record(filePath, base, StubEntry.response(key, values))).thenReturn(values))
+                .onErrorResume(throwable -> !(throwable instanceof OverflowException),
+                        throwable -> enqueue(new Record(filePath, base, StubEntry.failure(key, throwable))).then(Mono.error(throwable)));
+    }
+
+    private boolean offer(Record record) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("recording sink is closed");
+            }
+            if (!queue.offer(record)) {
+                return false;
+            }
+            queued++;
+            return true;
+        }
+    }
+
+    /**
+     * offers the entry until there is a place in the queue, the retries are scheduled on a timer
+     */
+    private Mono<Void> enqueue(Record record) {
+        return Mono.fromCallable(() -> offer(record))
+                .filter(Boolean::booleanValue)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(OVERFLOW_RETRY))
+                .timeout(overflowTimeout, Mono.error(() -> new OverflowException(overflowTimeout)))
+                .then();
+    }
+
+    /**
+     * waits until the entries queued before the call are written
+     * rethrows the failure of the last write if any
+     */
+    public void flush() {
+        synchronized (lock) {
+            long target = queued;
+            boolean interrupted = false;
+            while (written < target && writer.isAlive()) {
+                try {
+                    lock.wait(100);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                RuntimeException e = failure;
+                failure = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * stops accepting entries, writes the queued ones and stops the writer thread
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } finally {
+            writer.interrupt();
+        }
+    }
+
+    private void run() {
+        List<Record> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                Record first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (isClosed() && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+            }
+            queue.drainTo(batch, batchSize - batch.size());
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Record> batch) {
+        Map<String, List<StubEntry>> files = new LinkedHashMap<>();
+        Set<String> rewritten = new HashSet<>();
+        for (Record record : batch) {
+            List<StubEntry> entries = files.computeIfAbsent(record.filePath, k -> new ArrayList<>());
+            if (record.base != null && sessions.put(record.filePath, record.base) != record.base) {
+                // the first entry of the base, the file and the entries of the previous base are dropped
+                entries.clear();
+                rewritten.add(record.filePath);
+            }
+            entries.add(record.entry);
+        }
+        RuntimeException error = null;
+        for (Map.Entry<String, List<StubEntry>> file : files.entrySet()) {
+            try {
+                if (rewritten.contains(file.getKey())) {
+                    TextStub.write(Paths.get(file.getKey()), file.getValue());
+                } else {
+                    TextStub.append(Paths.get(file.getKey()), file.getValue());
+                }
+                StubIndex.invalidate(file.getKey());
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        synchronized (lock) {
+            written += batch.size();
+            if (error != null) {
+                failure = error;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    private static final class OverflowException extends IllegalStateException {
+        OverflowException(Duration timeout) {
+            super("recording queue is full for " + timeout);
+        }
+    }
+
+    private static final class Record {
+        final String filePath;
+        final Base base;
+        final StubEntry entry;
+
+        Record(String filePath, Base base, StubEntry entry) {
+            this.filePath = filePath;
+            this.base = base;
+            this.entry = entry;
+        }
+    }
+}
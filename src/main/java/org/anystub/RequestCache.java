@@ -2,27 +2,181 @@ package org.anystub;
 
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 
 /**
  * keeps cache of running requests
  * if the same request comes in non-blocking mode it will be reverted to
  * key in the map is composite - stub-filename+all+fields
+ * <p>
+ * the cache is bounded: least recently used entries are evicted when the number of entries
+ * exceeds maxSize or their total weight exceeds maxWeight. the weight of an entry is
+ * the number of characters in its key, request body included.
+ * entries older than ttl are dropped on access. failed requests are dropped as soon as they terminate,
+ * a request is dropped on cancel when none of the subscribers sharing it waits for the response any longer,
+ * so the next identical request goes through the stub again
  */
 public class  RequestCache<T> {
 
+    public static final int DEFAULT_MAX_SIZE = 10_000;
 
+    private final int maxSize;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
 
-    private ConcurrentMap<QueryKey, Mono<T>> m = new ConcurrentHashMap<>();
+    private final LinkedHashMap<QueryKey, Entry> m = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RequestCache() {
+        this(DEFAULT_MAX_SIZE, Long.MAX_VALUE, Duration.ZERO);
+    }
+
+    /**
+     * @param maxSize   max number of entries
+     * @param maxWeight max total length of the keys
+     * @param ttl       time to keep an entry, zero - no expiration
+     */
+    public RequestCache(int maxSize, long maxWeight, Duration ttl) {
+        this(maxSize, maxWeight, ttl, System::nanoTime);
+    }
+
+    RequestCache(int maxSize, long maxWeight, Duration ttl, LongSupplier nanoTime) {
+        if (maxSize <= 0 || maxWeight <= 0 || ttl.isNegative()) {
+            throw new IllegalArgumentException("cache limits should be positive");
+        }
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+    }
 
     public Mono<T> track(Base base, List<String> key, Mono<T> candidate) {
         if (!base.seekInCache()) {
             return candidate;
         }
-        return m.computeIfAbsent(new QueryKey(base.getFilePath(), key), tk -> candidate);
+        QueryKey queryKey = new QueryKey(base.getFilePath(), key);
+        long now = nanoTime.getAsLong();
+
+        synchronized (m) {
+            Entry entry = m.get(queryKey);
+            if (entry != null && !entry.expired(now)) {
+                hits.incrementAndGet();
+                StubMetrics.current().request(base.getFilePath(), base.getRequestMode(), StubMetrics.Outcome.CACHED);
+                return entry.value;
+            }
+            if (entry != null) {
+                remove(queryKey);
+            }
+            misses.incrementAndGet();
+
+            Entry created = new Entry(weigh(key), now);
+            created.value = candidate
+                    .doOnSubscribe(subscription -> created.waiting.incrementAndGet())
+                    .doOnSuccess(value -> created.resolved = true)
+                    .doOnError(throwable -> invalidate(queryKey, created))
+                    .doOnCancel(() -> {
+                        // other subscribers still wait for the shared response
+                        if (created.waiting.decrementAndGet() == 0 && !created.resolved) {
+                            invalidate(queryKey, created);
+                        }
+                    });
+            m.put(queryKey, created);
+            weight += created.weight;
+            evictOverLimits();
+            return created.value;
+        }
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries removed by size, weight, ttl or error policy
+     */
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (m) {
+            return m.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (m) {
+            m.clear();
+            weight = 0;
+        }
+    }
+
+    private void invalidate(QueryKey queryKey, Entry entry) {
+        synchronized (m) {
+            if (m.get(queryKey) == entry) {
+                remove(queryKey);
+            }
+        }
+    }
+
+    private void remove(QueryKey queryKey) {
+        Entry removed = m.remove(queryKey);
+        if (removed != null) {
+            weight -= removed.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void evictOverLimits() {
+        Iterator<Map.Entry<QueryKey, Entry>> iterator = m.entrySet().iterator();
+        while ((m.size() > maxSize || weight > maxWeight) && m.size() > 1) {
+            Map.Entry<QueryKey, Entry> eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long weigh(List<String> key) {
+        long res = 0;
+        for (String s : key) {
+            res += s == null ? 0 : s.length();
+        }
+        return res;
+    }
+
+    private final class Entry {
+        final long weight;
+        final long created;
+        Mono<T> value;
+        volatile boolean resolved;
+        final AtomicInteger waiting = new AtomicInteger();
+
+        Entry(long weight, long created) {
+            this.weight = weight;
+            this.created = created;
+        }
+
+        boolean expired(long now) {
+            return ttlNanos > 0 && now - created > ttlNanos;
+        }
     }
 
 }
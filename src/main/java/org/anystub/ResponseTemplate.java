@@ -0,0 +1,189 @@
+package org.anystub;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.anystub.Util.isHeader;
+import static org.anystub.Util.replayBody;
+
+/**
+ * decoded stored response: status, headers, body bytes and the recorded latency
+ * the template is immutable and shared, every replay builds a new response from it.
+ * a body kept in BodyStore is mapped and a compressed body is decompressed on the first replay.
+ * the template refers to the values it is decoded from weakly, so the stored strings are not kept twice
+ */
+final class ResponseTemplate {
+    private final List<WeakReference<Object>> source;
+    private final int status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final String filePath;
+    private final String storedBody;
+    private final Latency latency;
+    private volatile ByteBuffer resolvedBody;
+
+    private ResponseTemplate(List<WeakReference<Object>> source, int status, HttpHeaders headers, byte[] body,
+                             String filePath, String storedBody, Latency latency) {
+        this.source = source;
+        this.status = status;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.body = body;
+        this.filePath = filePath;
+        this.storedBody = storedBody;
+        this.latency = latency;
+    }
+
+    /**
+     * parses stored values: protocol, code, reason, headers, and the body
+     *
+     * @param filePath stub file, a reference to BodyStore is resolved against it
+     * @param values   stored values
+     * @return
+     */
+    static ResponseTemplate decode(String filePath, Iterable<String> values) {
+        if (values instanceof BinaryStub.Values) {
+            // the body of a binary stub is taken as it is
+            BinaryStub.Values binary = (BinaryStub.Values) values;
+            ResponseTemplate head = decode(filePath, binary.head());
+            return new ResponseTemplate(List.of(new WeakReference<>(binary)),
+                    head.status, head.headers, binary.body(), filePath, null, head.latency);
+        }
+        List<WeakReference<Object>> source = new ArrayList<>();
+        values.forEach(value -> source.add(new WeakReference<>(value)));
+
+        Iterator<String> iterator = values.iterator();
+        iterator.next();
+        int status = Integer.parseInt(iterator.next());
+        iterator.next();
+
+        HttpHeaders headers = new HttpHeaders();
+        Latency latency = Latency.NONE;
+        String postHeader = null;
+        while (iterator.hasNext()) {
+            String header = iterator.next();
+            if (Latency.isLatency(header) && iterator.hasNext()) {
+                latency = Latency.parse(header);
+                continue;
+            }
+            if (!isHeader(header)) {
+                postHeader = header;
+                break;
+            }
+            int i = header.indexOf(": ");
+            headers.add(header.substring(0, i), header.substring(i + 2));
+        }
+
+        if (BodyStore.isReference(postHeader) || BodyCompression.isCompressed(postHeader)) {
+            return new ResponseTemplate(source, status, headers, null, filePath, postHeader, latency);
+        }
+        byte[] body = postHeader == null ? null : StringUtil.recoverBinaryData(postHeader);
+        return new ResponseTemplate(source, status, headers, body, filePath, null, latency);
+    }
+
+    /**
+     * @param values stored values
+     * @return true if the template is decoded from the same strings, compared by reference
+     */
+    boolean decodedFrom(Iterable<String> values) {
+        if (values instanceof BinaryStub.Values) {
+            return source.size() == 1 && source.get(0).get() == values;
+        }
+        Iterator<String> iterator = values.iterator();
+        for (WeakReference<Object> value : source) {
+            if (!iterator.hasNext() || iterator.next() != value.get()) {
+                return false;
+            }
+        }
+        return !iterator.hasNext();
+    }
+
+    int status() {
+        return status;
+    }
+
+    /**
+     * @return read-only headers
+     */
+    HttpHeaders headers() {
+        return headers;
+    }
+
+    /**
+     * @return recorded latency, Latency.NONE if it is not recorded
+     */
+    Latency latency() {
+        return latency;
+    }
+
+    boolean hasBody() {
+        return body != null || storedBody != null;
+    }
+
+    /**
+     * @return length of the body, -1 if a stored body is not resolved yet
+     */
+    long bodySize() {
+        if (body != null) {
+            return body.length;
+        }
+        ByteBuffer resolved = resolvedBody;
+        return storedBody == null ? 0 : resolved != null ? resolved.remaining() : -1;
+    }
+
+    /**
+     * @return read-only view of the body
+     */
+    ByteBuffer bodyBuffer() {
+        if (storedBody != null) {
+            return resolvedBody().asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    /**
+     * the same as bodyBuffer(), a body which is not resolved yet is read on the persistence scheduler
+     *
+     * @return read-only view of the body
+     */
+    Mono<ByteBuffer> resolveBody() {
+        if (storedBody == null) {
+            return Mono.fromSupplier(this::bodyBuffer);
+        }
+        return Mono.defer(() -> {
+            if (resolvedBody != null) {
+                return Mono.just(bodyBuffer());
+            }
+            return Mono.fromCallable(this::bodyBuffer).subscribeOn(StubSchedulers.persistence());
+        });
+    }
+
+    Flux<DataBuffer> body(int chunkSize) {
+        if (storedBody != null) {
+            return resolveBody().flatMapMany(buffer -> replayBody(buffer, chunkSize, DefaultDataBufferFactory.sharedInstance));
+        }
+        return replayBody(body, chunkSize, DefaultDataBufferFactory.sharedInstance);
+    }
+
+    /**
+     * maps the body of BodyStore or decompresses the body, once
+     */
+    private ByteBuffer resolvedBody() {
+        ByteBuffer res = resolvedBody;
+        if (res == null) {
+            res = BodyCompression.isCompressed(storedBody) ?
+                    ByteBuffer.wrap(BodyCompression.decompress(storedBody)) :
+                    BodyStore.map(filePath, storedBody);
+            resolvedBody = res;
+        }
+        return res;
+    }
+}
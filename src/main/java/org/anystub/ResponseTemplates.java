@@ -0,0 +1,51 @@
+package org.anystub;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * keeps decoded templates of stored responses, so a repeated replay skips parsing
+ * a template is found by the request key and is reused while the stub returns the same values,
+ * least recently used templates are evicted over maxSize
+ */
+final class ResponseTemplates {
+
+    private final Map<QueryKey, ResponseTemplate> templates;
+
+    ResponseTemplates() {
+        this(RequestCache.DEFAULT_MAX_SIZE);
+    }
+
+    ResponseTemplates(int maxSize) {
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, ResponseTemplate> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    ResponseTemplate get(String filePath, List<String> key, Iterable<String> values) {
+        QueryKey queryKey = new QueryKey(filePath, key);
+        ResponseTemplate template;
+        synchronized (templates) {
+            template = templates.get(queryKey);
+        }
+        if (template != null && template.decodedFrom(values)) {
+            return template;
+        }
+
+        template = ResponseTemplate.decode(filePath, values);
+        synchronized (templates) {
+            templates.put(queryKey, template);
+        }
+        return template;
+    }
+
+    int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.anystub;
+
+import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * keeps settings discovered for the running test method
+ * AnyStubExtension tells which test method runs on the current thread. while it runs, a setting
+ * is discovered on its first lookup, from the call stack of the test as the discovery needs it,
+ * and every other lookup of the test reads it from the thread without walking the stack.
+ * so an annotated helper called from the test gets the settings of the test.
+ * the settings are dropped when the test finishes, tests running in parallel do not share them.
+ * without the extension, or on other threads, every lookup runs the discovery as before
+ */
+public final class SettingsRegistry {
+
+    // settings of the test running on the thread, read and written by that thread only
+    private static final ThreadLocal<Map<Class<?>, Optional<Object>>> CURRENT = new ThreadLocal<>();
+
+    private SettingsRegistry() {
+    }
+
+    static void enter() {
+        CURRENT.set(new HashMap<>(4));
+    }
+
+    static void exit() {
+        CURRENT.remove();
+    }
+
+    public static AnyStubId anyStubId() {
+        return resolve(AnyStubId.class, AnyStubFileLocator::discoverFile);
+    }
+
+    public static AnySettingsHttp settingsHttp() {
+        return resolve(AnySettingsHttp.class, AnySettingsHttpExtractor::httpSettings);
+    }
+
+    public static AnySettingsFlux settingsFlux() {
+        return resolve(AnySettingsFlux.class, AnySettingsFluxExtractor::fluxSettings);
+    }
+
+    private static <A extends Annotation> A resolve(Class<A> type, Supplier<A> discovery) {
+        Map<Class<?>, Optional<Object>> settings = CURRENT.get();
+        if (settings == null) {
+            return discovery.get();
+        }
+        Optional<Object> resolved = settings.get(type);
+        if (resolved == null) {
+            resolved = Optional.ofNullable(discovery.get());
+            settings.put(type, resolved);
+        }
+        return type.cast(resolved.orElse(null));
+    }
+}
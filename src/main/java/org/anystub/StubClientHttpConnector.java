@@ -1,8 +1,8 @@
 package org.anystub;
 
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
 import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.http.client.reactive.ClientHttpResponse;
@@ -12,29 +12,34 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static org.anystub.Util.HEADER_MASK;
 import static org.anystub.Util.code2Text;
-import static org.anystub.Util.extractBase;
-import static org.anystub.Util.extractHttpOptions;
-import static org.anystub.Util.extractOptions;
 
 public class StubClientHttpConnector implements ClientHttpConnector {
 
 
     final ClientHttpConnector real;
 
-    private final RequestCache<ClientHttpResponse> cache = new RequestCache<>();
+    private final RequestCache<ClientHttpResponse> cache;
+    private final ResponseTemplates templates = new ResponseTemplates();
 
     public StubClientHttpConnector(ClientHttpConnector real) {
+        this(real, new RequestCache<>());
+    }
+
+    public StubClientHttpConnector(ClientHttpConnector real, RequestCache<ClientHttpResponse> cache) {
         this.real = real;
+        this.cache = cache;
+    }
+
+    public RequestCache<ClientHttpResponse> getCache() {
+        return cache;
     }
 
     @Override
@@ -42,8 +47,7 @@ public class StubClientHttpConnector implements ClientHttpConnector {
 
 
         MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
-        Mono<MockClientHttpRequest> requestMono = requestCallback
-                .apply(request)
+        Mono<MockClientHttpRequest> requestMono = StubPhaseEvent.timed(StubPhaseEvent.CAPTURE, event -> requestCallback.apply(request))
                 .then(Mono.defer(() ->
                         Mono.just(request)
                                 .cache()));
@@ -52,82 +56,206 @@ public class StubClientHttpConnector implements ClientHttpConnector {
         return requestMono
                 .flatMap(clientHttpRequest ->
                         Mono.deferContextual(ctx -> {
-                            AnySettingsHttp settingsHttp = extractHttpOptions(ctx);
-                            AnyStubId settings = extractOptions(ctx);
-                            return Util.getRequestKey(method, uri, clientHttpRequest, settingsHttp, settings);
-                        }))
-                .flatMap((Function<List<String>, Mono<ClientHttpResponse>>) key ->
-                        Mono.deferContextual(ctx -> {
-
-                            Base base = extractBase(ctx);
-
-                            Mono<ClientHttpResponse> candidate = base.request2(() -> real.connect(method, uri, requestCallback),
-                                    (Iterable<String> iterable) -> Mono.just(decode(iterable)),
-
-                                    (clientHttpResponseMono, decoderFunction) ->
-                                            clientHttpResponseMono
-                                                    .flatMap((ClientHttpResponse response) ->
-                                                            encode(response))
-                                                    .flatMap((Iterable<String> strings) ->
-                                                            decoderFunction.apply(strings, null))
-                                                    .doOnError(throwable -> decoderFunction.apply(null, throwable)),
-                                    new KeysSupplier() {
-                                        @Override
-                                        public String[] get() {
-                                            return key.toArray(new String[0]);
+                            ExchangeSettings settings = new ExchangeSettings(ctx);
+                            long started = System.nanoTime();
+                            return StubPhaseEvent.timed(StubPhaseEvent.KEY, event ->
+                                            Util.getRequestKey(method, uri, clientHttpRequest, settings.settingsHttp(), settings.anyStubId(), settings.settingsFlux())
+                                                    .doOnNext(key -> event.key(settings.base().getFilePath(), key)))
+                                    .flatMap(key -> {
+                                        Base base = settings.base();
+                                        StubMetrics.current().time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.KEY, System.nanoTime() - started);
+                                        StubIndex index = settings.indexed() ? StubIndex.current(base) : null;
+                                        if (base.isNew() || settings.indexed() && index == null) {
+                                            // the stub file is loaded on first use, it blocks, so the exchange moves off the calling thread
+                                            return Mono.defer(() -> exchange(method, uri, clientHttpRequest, settings, key, settings.indexed() ? StubIndex.of(base) : null))
+                                                    .subscribeOn(StubSchedulers.persistence());
                                         }
-                                    }).cache();
-
-                            return cache.track(base, key, candidate);
-
+                                        return exchange(method, uri, clientHttpRequest, settings, key, index);
+                                    });
                         }));
 
     }
 
-
-    private static ClientHttpResponse decode(Iterable<String> iterable) {
-        if (iterable==null) {
-            return null;
-        }
-        Iterator<String> iterator = iterable.iterator();
-        String[] protocol = iterator.next().split("[/.]");
-        String code = iterator.next();
-        String reason = iterator.next();
-
-        MockClientHttpResponse clientResponse = new MockClientHttpResponse(
-                Integer.parseInt(code));
-
-        String postHeader = null;
-        while (iterator.hasNext()) {
-            String header;
-            header = iterator.next();
-            if (!header.matches(HEADER_MASK)) {
-                postHeader = header;
-                break;
+    private Mono<ClientHttpResponse> exchange(HttpMethod method, URI uri,
+                                              MockClientHttpRequest captured,
+                                              ExchangeSettings settings,
+                                              List<String> key,
+                                              StubIndex index) {
+        Base base = settings.base();
+        AnySettingsFlux settingsFlux = settings.settingsFlux();
+        StubMetrics metrics = StubMetrics.current();
+        if (index != null) {
+            StubPhaseEvent lookup = StubPhaseEvent.start(StubPhaseEvent.LOOKUP);
+            long started = System.nanoTime();
+            List<String> values = index.get(key);
+            metrics.time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.LOOKUP, System.nanoTime() - started);
+            lookup.key(base.getFilePath(), key).finish();
+            if (values != null) {
+                metrics.request(base.getFilePath(), base.getRequestMode(), StubMetrics.Outcome.REPLAYED);
+                return replay(base, key, values, settingsFlux, null);
             }
+        }
 
-            int i = header.indexOf(": ");
-            clientResponse
-                    .getHeaders()
-                    .set(header.substring(0, i), header.substring(i + 2));
+        Function<Iterable<String>, ClientHttpResponse> decoder = (Iterable<String> iterable) -> {
+            // the recorded response, an index in use learns it, an index loaded earlier is stale
+            if (index == null) {
+                StubIndex.invalidate(base);
+            } else if (iterable != null) {
+                index.put(key, iterable);
+            }
+            return decode(base, key, iterable, settingsFlux, 0);
+        };
+
+        // request2 calls the decoder or the inverter before it returns, so outcome is known right after the call
+        StubMetrics.Outcome[] outcome = {StubMetrics.Outcome.PASSED_THROUGH};
+        StubPhaseEvent lookup = StubPhaseEvent.start(StubPhaseEvent.LOOKUP);
+        long started = System.nanoTime();
+        Mono<ClientHttpResponse> stubbed;
+        try {
+            stubbed = base.request2(() -> StubPhaseEvent.timed(StubPhaseEvent.UPSTREAM, event ->
+                        real.connect(method, uri, realRequest -> replayRequest(captured, realRequest, event.key(base.getFilePath(), key)))),
+                (Iterable<String> iterable) -> {
+                    if (outcome[0] == StubMetrics.Outcome.RECORDED) {
+                        // the response which is just recorded
+                        return Mono.fromSupplier(() -> decoder.apply(iterable));
+                    }
+                    outcome[0] = StubMetrics.Outcome.REPLAYED;
+                    return replay(base, key, iterable, settingsFlux, index);
+                },
+
+                (clientHttpResponseMono, decoderFunction) -> {
+                    outcome[0] = StubMetrics.Outcome.RECORDED;
+                    BiFunction<ClientHttpResponse, Runnable, Mono<Iterable<String>>> encoder = (ClientHttpResponse response, Runnable bodyRead) ->
+                            StubPhaseEvent.timed(StubPhaseEvent.ENCODE, event ->
+                                    encode(response, base.getFilePath(), settingsFlux, event.key(base.getFilePath(), key), bodyRead));
+                    Mono<Iterable<String>> encoded = (settingsFlux.recordLatency() ?
+                            Latency.measure(clientHttpResponseMono, encoder) :
+                            clientHttpResponseMono.flatMap(value -> encoder.apply(value, () -> { })));
+                    if (settingsFlux.recordAsync() && base.getRequestMode() == RequestMode.rmAll) {
+                        // in other modes Base should know the entry to replay it, so Base saves it
+                        return RecordingSink.shared()
+                                .record(base, key, encoded)
+                                .map(decoder);
+                    }
+                    // encode() delivers the values on the persistence scheduler, a failure is saved there as well
+                    return encoded
+                            .flatMap((Iterable<String> strings) ->
+                                    decoderFunction.apply(strings, null))
+                            .onErrorResume(throwable -> Mono.fromRunnable(() -> decoderFunction.apply(null, throwable))
+                                    .subscribeOn(StubSchedulers.persistence())
+                                    .then(Mono.error(throwable)));
+                },
+                new KeysSupplier() {
+                    @Override
+                    public String[] get() {
+                        return key.toArray(new String[0]);
+                    }
+                });
+        } catch (RuntimeException e) {
+            metrics.request(base.getFilePath(), base.getRequestMode(), StubMetrics.Outcome.MISSED);
+            throw e;
+        } finally {
+            lookup.key(base.getFilePath(), key).finish();
         }
+        metrics.time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.LOOKUP, System.nanoTime() - started);
+
+        StubMetrics.Outcome result = outcome[0];
+        // counted once per candidate, cache() subscribes to it once
+        Mono<ClientHttpResponse> candidate = stubbed
+                .doOnSubscribe(subscription -> metrics.request(base.getFilePath(), base.getRequestMode(), result))
+                .cache();
+
+        return cache.track(base, key, candidate);
+    }
+
+    /**
+     * writes the request captured by the mock to the real request,
+     * the body is not encoded again: the real request gets views of the captured buffers
+     *
+     * @param captured    request the requestCallback was applied to
+     * @param realRequest request of the real connector
+     * @return
+     */
+    static Mono<Void> replayRequest(MockClientHttpRequest captured, ClientHttpRequest realRequest) {
+        return replayRequest(captured, realRequest, StubPhaseEvent.NONE);
+    }
+
+    private static Mono<Void> replayRequest(MockClientHttpRequest captured, ClientHttpRequest realRequest, StubPhaseEvent event) {
+        realRequest.getHeaders().putAll(captured.getHeaders());
+        realRequest.getCookies().putAll(captured.getCookies());
+
+        return captured.getBody()
+                .collectList()
+                .onErrorReturn(IllegalStateException.class, List.of())
+                .flatMap(buffers -> {
+                    event.requestBodySize(buffers.stream().mapToLong(DataBuffer::readableByteCount).sum());
+                    if (buffers.isEmpty()) {
+                        return realRequest.setComplete();
+                    }
+                    DataBufferFactory factory = realRequest.bufferFactory();
+                    return realRequest.writeWith(Flux.fromIterable(buffers)
+                            .flatMapIterable(buffer -> views(buffer, factory)));
+                });
+    }
 
-        if (postHeader != null) {
-            byte[] bytes = StringUtil.recoverBinaryData(postHeader);
-            Charset charset = null;
-            MediaType contentType = clientResponse.getHeaders().getContentType();
-            if (contentType != null) {
-                charset = contentType.getCharset();
+    private static List<DataBuffer> views(DataBuffer buffer, DataBufferFactory factory) {
+        List<DataBuffer> res = new ArrayList<>(1);
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                res.add(factory.wrap(iterator.next()));
             }
-            if (charset == null) {
-                charset = StandardCharsets.UTF_8;
+        }
+        return res;
+    }
+
+    /**
+     * builds the stored response, it is delayed by the recorded latency scaled with latencyScale()
+     *
+     * @param index the index to keep the values in, or null
+     */
+    private Mono<ClientHttpResponse> replay(Base base, List<String> key, Iterable<String> values,
+                                            AnySettingsFlux settingsFlux, StubIndex index) {
+        double scale = settingsFlux.latencyScale();
+        Mono<ClientHttpResponse> res = Mono.fromSupplier(() -> {
+            if (index != null && values != null) {
+                index.put(key, values);
             }
-            clientResponse.setBody(new String(bytes, charset));
+            return decode(base, key, values, settingsFlux, scale);
+        });
+        if (scale <= 0 || values == null) {
+            return res;
+        }
+        Duration delay = templates.get(base.getFilePath(), key, values).latency().headersDelay(scale);
+        return delay.isZero() ? res : res.delaySubscription(delay);
+    }
+
+    private ClientHttpResponse decode(Base base, List<String> key, Iterable<String> iterable, AnySettingsFlux settingsFlux,
+                                      double latencyScale) {
+        if (iterable==null) {
+            return null;
+        }
+        StubPhaseEvent event = StubPhaseEvent.start(StubPhaseEvent.DECODE);
+        long started = System.nanoTime();
+        ResponseTemplate template = templates.get(base.getFilePath(), key, iterable);
+
+        MockClientHttpResponse clientResponse = new MockClientHttpResponse(template.status());
+        // a repeated header line replaces the previous one
+        template.headers().forEach((name, values) -> clientResponse.getHeaders().set(name, values.get(values.size() - 1)));
+        if (template.hasBody()) {
+            Duration delay = template.latency().bodyDelay(latencyScale);
+            Flux<DataBuffer> body = template.body(settingsFlux.chunkSize());
+            clientResponse.setBody(delay.isZero() ? body : body.delaySubscription(delay));
         }
+        StubMetrics.current().time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.DECODE, System.nanoTime() - started);
+        event.key(base.getFilePath(), key).responseBodySize(template.bodySize()).finish();
         return clientResponse;
     }
 
-    private static Mono<Iterable<String>> encode(ClientHttpResponse response) {
+    /**
+     * @param bodyRead runs when the body is read till the last byte, before it is stored
+     */
+    private static Mono<Iterable<String>> encode(ClientHttpResponse response, String filePath, AnySettingsFlux settingsFlux, StubPhaseEvent event,
+                                                 Runnable bodyRead) {
         List<String> res = new ArrayList<>();
         if (response == null) {
             return Mono.just(res);
@@ -143,8 +271,12 @@ public class StubClientHttpConnector implements ClientHttpConnector {
 
         Flux<DataBuffer> body = response.getBody();
 
-        return Util.extractStringMono(body).map(bodyString -> {
-            res.add(bodyString);
+        return Util.extractBytesMono(body)
+                .doOnNext(bytes -> bodyRead.run())
+                .publishOn(StubSchedulers.persistence())
+                .map(bytes -> {
+            event.responseBodySize(bytes.length);
+            res.add(Util.bodyToString(bytes, filePath, settingsFlux));
             return res;
         });
     }
@@ -0,0 +1,45 @@
+package org.anystub;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * converts stub files between the text and the binary formats
+ * <pre>
+ * java -cp ... org.anystub.StubConverter to-binary src/test/resources/anystub/stub.yml [stub.bin]
+ * java -cp ... org.anystub.StubConverter to-text src/test/resources/anystub/stub.bin stub.yml
+ * </pre>
+ * StubIndex picks up a binary file next to the text stub, see BinaryStub.siblingOf
+ */
+public final class StubConverter {
+
+    private StubConverter() {
+    }
+
+    public static void toBinary(Path text, Path binary) {
+        BinaryStub.write(binary, TextStub.read(text));
+    }
+
+    public static void toText(Path binary, Path text) {
+        TextStub.write(text, BinaryStub.open(binary).entries());
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            usage();
+            return;
+        }
+        Path source = Paths.get(args[1]);
+        if ("to-binary".equals(args[0])) {
+            toBinary(source, args.length == 3 ? Paths.get(args[2]) : BinaryStub.siblingOf(source));
+        } else if ("to-text".equals(args[0]) && args.length == 3) {
+            toText(source, Paths.get(args[2]));
+        } else {
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: StubConverter to-binary <stub.yml> [<stub.bin>] | to-text <stub.bin> <stub.yml>");
+    }
+}
@@ -0,0 +1,64 @@
+package org.anystub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * an entry of a stub file: request keys, exception and response values
+ */
+public final class StubEntry {
+    private final List<String> keys;
+    private final List<String> exception;
+    private final List<String> values;
+
+    public StubEntry(List<String> keys, List<String> exception, List<String> values) {
+        this.keys = Collections.unmodifiableList(keys);
+        this.exception = Collections.unmodifiableList(exception);
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @param keys   request key
+     * @param values stored values of the response
+     * @return
+     */
+    public static StubEntry response(List<String> keys, Iterable<String> values) {
+        List<String> list = new ArrayList<>();
+        values.forEach(list::add);
+        return new StubEntry(new ArrayList<>(keys), List.of(), list);
+    }
+
+    /**
+     * @param keys      request key
+     * @param throwable the failure of the request: its class and message are stored
+     * @return
+     */
+    public static StubEntry failure(List<String> keys, Throwable throwable) {
+        List<String> exception = new ArrayList<>();
+        exception.add(throwable.getClass().getName());
+        if (throwable.getMessage() != null) {
+            exception.add(throwable.getMessage());
+        }
+        return new StubEntry(new ArrayList<>(keys), exception, List.of());
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getException() {
+        return exception;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return true if the entry holds a response rather than an exception
+     */
+    public boolean isResponse() {
+        return exception.isEmpty();
+    }
+}
@@ -3,9 +3,7 @@ package org.anystub;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
-import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
@@ -15,25 +13,33 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static org.anystub.Util.HEADER_MASK;
 import static org.anystub.Util.code2Text;
-import static org.anystub.Util.extractBase;
-import static org.anystub.Util.extractHttpOptions;
-import static org.anystub.Util.extractOptions;
 import static org.anystub.Util.headerToString;
 
 public class StubExchangeFilterFunction implements ExchangeFilterFunction {
 
-    private final RequestCache<ClientResponse> cache = new RequestCache<>();
+    private final RequestCache<ClientResponse> cache;
+    private final ResponseTemplates templates = new ResponseTemplates();
+
+    public StubExchangeFilterFunction() {
+        this(new RequestCache<>());
+    }
+
+    public StubExchangeFilterFunction(RequestCache<ClientResponse> cache) {
+        this.cache = cache;
+    }
+
+    public RequestCache<ClientResponse> getCache() {
+        return cache;
+    }
 
     @Override
     public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
@@ -41,91 +47,181 @@ public class StubExchangeFilterFunction implements ExchangeFilterFunction {
         URI uri = request.url();
 
         MockClientHttpRequest mockClientHttpRequest = new MockClientHttpRequest(method, uri);
-        Mono<MockClientHttpRequest> requestMono = request
-                .writeTo(mockClientHttpRequest, ExchangeStrategies.withDefaults())
+        Mono<MockClientHttpRequest> requestMono = StubPhaseEvent.timed(StubPhaseEvent.CAPTURE, event ->
+                        request.writeTo(mockClientHttpRequest, ExchangeStrategies.withDefaults()))
                 .then(Mono.defer(() -> Mono.just(mockClientHttpRequest)))
                 .cache();
 
         return requestMono
                 .flatMap(mockClientHttpRequest1 ->
                         Mono.deferContextual(ctx -> {
-                            AnySettingsHttp settingsHttp = extractHttpOptions(ctx);
-                            AnyStubId settings = extractOptions(ctx);
-                            return Util.getRequestKey(method, uri, mockClientHttpRequest1, settingsHttp, settings);
-                        }))
-                .flatMap((Function<List<String>, Mono<ClientResponse>>) key ->
-                        Mono.deferContextual(ctx -> {
-                            Base base = extractBase(ctx);
-
-                            Mono<ClientResponse> candidate = base.request2(
-                                    () -> next.exchange(request),
-                                    values -> Mono.just(decode(values)),
-                                    new Inverter<Mono<ClientResponse>>() {
-                                        @Override
-                                        public Mono<ClientResponse> invert(Mono<ClientResponse> clientResponseMono, BiFunction<Iterable<String>, Throwable, Mono<ClientResponse>> decoderFunction) {
-                                            return clientResponseMono
-                                                    .flatMap((ClientResponse clientResponse) -> encode(clientResponse))
-                                                    .flatMap((Iterable<String> strings) -> decoderFunction.apply(strings, null))
-                                                    .doOnError(throwable -> decoderFunction.apply(null, throwable));
-
-                                        }
-                                    },
-                                    new KeysSupplier() {
-                                        @Override
-                                        public String[] get() {
-                                            return key.toArray(new String[0]);
+                            ExchangeSettings settings = new ExchangeSettings(ctx);
+                            long started = System.nanoTime();
+                            return StubPhaseEvent.timed(StubPhaseEvent.KEY, event ->
+                                            Util.getRequestKey(method, uri, mockClientHttpRequest1, settings.settingsHttp(), settings.anyStubId(), settings.settingsFlux())
+                                                    .doOnNext(key -> event.key(settings.base().getFilePath(), key)))
+                                    .flatMap(key -> {
+                                        Base base = settings.base();
+                                        StubMetrics.current().time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.KEY, System.nanoTime() - started);
+                                        StubIndex index = settings.indexed() ? StubIndex.current(base) : null;
+                                        if (base.isNew() || settings.indexed() && index == null) {
+                                            // the stub file is loaded on first use, it blocks, so the exchange moves off the calling thread
+                                            return Mono.defer(() -> exchange(request, next, settings, key, settings.indexed() ? StubIndex.of(base) : null))
+                                                    .subscribeOn(StubSchedulers.persistence());
                                         }
-                                    }
-
-                            );
-                            return cache.track(base, key, candidate);
+                                        return exchange(request, next, settings, key, index);
+                                    });
                         }));
 
     }
 
-    private static ClientResponse decode(Iterable<String> iterable) {
-        Iterator<String> iterator = iterable.iterator();
-        String[] protocol = iterator.next().split("[/.]");
-        String code = iterator.next();
-        String reason = iterator.next();
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next,
+                                          ExchangeSettings settings,
+                                          List<String> key,
+                                          StubIndex index) {
+        Base base = settings.base();
+        AnySettingsFlux settingsFlux = settings.settingsFlux();
+        StubMetrics metrics = StubMetrics.current();
+        if (index != null) {
+            StubPhaseEvent lookup = StubPhaseEvent.start(StubPhaseEvent.LOOKUP);
+            long started = System.nanoTime();
+            List<String> stored = index.get(key);
+            metrics.time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.LOOKUP, System.nanoTime() - started);
+            lookup.key(base.getFilePath(), key).finish();
+            if (stored != null) {
+                metrics.request(base.getFilePath(), base.getRequestMode(), StubMetrics.Outcome.REPLAYED);
+                return replay(base, key, stored, settingsFlux, null);
+            }
+        }
 
+        Function<Iterable<String>, ClientResponse> decoder = values -> {
+            // the recorded response, an index in use learns it, an index loaded earlier is stale
+            if (index == null) {
+                StubIndex.invalidate(base);
+            } else if (values != null) {
+                index.put(key, values);
+            }
+            return decode(base, key, values, settingsFlux, 0);
+        };
 
-        ClientResponse.Builder builder = ClientResponse.create(HttpStatus.valueOf(Integer.parseInt(code)));
+        // request2 calls the decoder or the inverter before it returns, so outcome is known right after the call
+        StubMetrics.Outcome[] outcome = {StubMetrics.Outcome.PASSED_THROUGH};
+        StubPhaseEvent lookup = StubPhaseEvent.start(StubPhaseEvent.LOOKUP);
+        long started = System.nanoTime();
+        Mono<ClientResponse> stubbed;
+        try {
+            stubbed = base.request2(
+                () -> StubPhaseEvent.timed(StubPhaseEvent.UPSTREAM, event ->
+                        next.exchange(request).doOnNext(response -> event.key(base.getFilePath(), key))),
+                values -> {
+                    if (outcome[0] == StubMetrics.Outcome.RECORDED) {
+                        // the response which is just recorded
+                        return Mono.fromSupplier(() -> decoder.apply(values));
+                    }
+                    outcome[0] = StubMetrics.Outcome.REPLAYED;
+                    return replay(base, key, values, settingsFlux, index);
+                },
+                new Inverter<Mono<ClientResponse>>() {
+                    @Override
+                    public Mono<ClientResponse> invert(Mono<ClientResponse> clientResponseMono, BiFunction<Iterable<String>, Throwable, Mono<ClientResponse>> decoderFunction) {
+                        outcome[0] = StubMetrics.Outcome.RECORDED;
+                        BiFunction<ClientResponse, Runnable, Mono<Iterable<String>>> encoder = (ClientResponse clientResponse, Runnable bodyRead) ->
+                                StubPhaseEvent.timed(StubPhaseEvent.ENCODE, event ->
+                                        encode(clientResponse, base.getFilePath(), settingsFlux, event.key(base.getFilePath(), key), bodyRead));
+                        Mono<Iterable<String>> encoded = (settingsFlux.recordLatency() ?
+                                Latency.measure(clientResponseMono, encoder) :
+                                clientResponseMono.flatMap(value -> encoder.apply(value, () -> { })));
+                        if (settingsFlux.recordAsync() && base.getRequestMode() == RequestMode.rmAll) {
+                            // in other modes Base should know the entry to replay it, so Base saves it
+                            return RecordingSink.shared()
+                                    .record(base, key, encoded)
+                                    .map(decoder);
+                        }
+                        // encode() delivers the values on the persistence scheduler, a failure is saved there as well
+                        return encoded
+                                .flatMap((Iterable<String> strings) -> decoderFunction.apply(strings, null))
+                                .onErrorResume(throwable -> Mono.fromRunnable(() -> decoderFunction.apply(null, throwable))
+                                        .subscribeOn(StubSchedulers.persistence())
+                                        .then(Mono.error(throwable)));
 
-        MediaType contentType = null;
-        String postHeader = null;
-        while (iterator.hasNext()) {
-            String header;
-            header = iterator.next();
-            if (!header.matches(HEADER_MASK)) {
-                postHeader = header;
-                break;
-            }
+                    }
+                },
+                new KeysSupplier() {
+                    @Override
+                    public String[] get() {
+                        return key.toArray(new String[0]);
+                    }
+                }
 
-            int i = header.indexOf(": ");
-            builder = builder.header(header.substring(0, i), header.substring(i + 2));
-            if (contentType == null
-                    && StringUtils.hasLength(header.substring(0, i))
-                    && header.substring(0, i).equals("Content-Type")) {
-                contentType = MediaType.parseMediaType(header.substring(i + 2));
-            }
+            );
+        } catch (RuntimeException e) {
+            metrics.request(base.getFilePath(), base.getRequestMode(), StubMetrics.Outcome.MISSED);
+            throw e;
+        } finally {
+            lookup.key(base.getFilePath(), key).finish();
         }
+        metrics.time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.LOOKUP, System.nanoTime() - started);
 
-        if (postHeader != null) {
-            byte[] bytes = StringUtil.recoverBinaryData(postHeader);
-            Charset charset = null;
-            if (contentType != null) {
-                charset = contentType.getCharset();
-            }
-            if (charset == null) {
-                charset = StandardCharsets.UTF_8;
+        StubMetrics.Outcome result = outcome[0];
+        // counted once per candidate as in StubClientHttpConnector, the cached candidate may get more subscribers
+        AtomicBoolean counted = new AtomicBoolean();
+        Mono<ClientResponse> candidate = stubbed
+                .doOnSubscribe(subscription -> {
+                    if (counted.compareAndSet(false, true)) {
+                        metrics.request(base.getFilePath(), base.getRequestMode(), result);
+                    }
+                });
+        return cache.track(base, key, candidate);
+    }
+
+    /**
+     * builds the stored response, it is delayed by the recorded latency scaled with latencyScale()
+     *
+     * @param index the index to keep the values in, or null
+     */
+    private Mono<ClientResponse> replay(Base base, List<String> key, Iterable<String> values,
+                                        AnySettingsFlux settingsFlux, StubIndex index) {
+        double scale = settingsFlux.latencyScale();
+        Mono<ClientResponse> res = Mono.fromSupplier(() -> {
+            // the recorded response, an index in use learns it, an index loaded earlier is stale
+            if (index == null) {
+                StubIndex.invalidate(base);
+            } else if (values != null) {
+                index.put(key, values);
             }
-            builder.body(new String(bytes, charset));
+            return decode(base, key, values, settingsFlux, scale);
+        });
+        if (scale <= 0 || values == null) {
+            return res;
+        }
+        Duration delay = templates.get(base.getFilePath(), key, values).latency().headersDelay(scale);
+        return delay.isZero() ? res : res.delaySubscription(delay);
+    }
+
+    private ClientResponse decode(Base base, List<String> key, Iterable<String> iterable, AnySettingsFlux settingsFlux,
+                                  double latencyScale) {
+        StubPhaseEvent event = StubPhaseEvent.start(StubPhaseEvent.DECODE);
+        long started = System.nanoTime();
+        ResponseTemplate template = templates.get(base.getFilePath(), key, iterable);
+
+        ClientResponse.Builder builder = ClientResponse.create(HttpStatus.valueOf(template.status()))
+                .headers(headers -> headers.addAll(template.headers()));
+        if (template.hasBody()) {
+            Duration delay = template.latency().bodyDelay(latencyScale);
+            Flux<DataBuffer> body = template.body(settingsFlux.chunkSize());
+            builder.body(delay.isZero() ? body : body.delaySubscription(delay));
         }
-        return builder.build();
+        ClientResponse res = builder.build();
+        StubMetrics.current().time(base.getFilePath(), base.getRequestMode(), StubMetrics.Phase.DECODE, System.nanoTime() - started);
+        event.key(base.getFilePath(), key).responseBodySize(template.bodySize()).finish();
+        return res;
     }
 
-    private static Mono<Iterable<String>> encode(ClientResponse response) {
+    /**
+     * @param bodyRead runs when the body is read till the last byte, before it is stored
+     */
+    private static Mono<Iterable<String>> encode(ClientResponse response, String filePath, AnySettingsFlux settingsFlux, StubPhaseEvent event,
+                                                 Runnable bodyRead) {
         List<String> res = new ArrayList<>();
         if (response == null) {
             return Mono.just(res);
@@ -149,9 +245,12 @@ public class StubExchangeFilterFunction implements ExchangeFilterFunction {
 
         Flux<DataBuffer> body = response.bodyToFlux(DataBuffer.class);
 
-        return Util.extractStringMono(body)
-                .map(bodyString -> {
-                    res.add(bodyString);
+        return Util.extractBytesMono(body)
+                .doOnNext(bytes -> bodyRead.run())
+                .publishOn(StubSchedulers.persistence())
+                .map(bytes -> {
+                    event.responseBodySize(bytes.length);
+                    res.add(Util.bodyToString(bytes, filePath, settingsFlux));
                     return res;
                 });
     }
@@ -0,0 +1,202 @@
+package org.anystub;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * index of the responses stored in a stub file
+ * maps a fingerprint of the request key (see QueryKey) to the stored keys and values, so replay costs
+ * a single hash lookup regardless of the number of entries in the file. the keys are compared on lookup,
+ * requests with the same fingerprint do not get the response of each other.
+ * the index is loaded once per file and is updated when a response is recorded or found by the stub.
+ * it belongs to the Base it is loaded for: another Base of the file, ex. after BaseManagerFactory
+ * drops the stub, loads it again. the stubs drop the index when they write the file while it is not used,
+ * ex. recording in rmAll mode; call invalidate when the file is changed otherwise.
+ * entries holding an exception are not indexed, such requests go through the stub.
+ * <p>
+ * the index is used when AnySettingsFlux.index() is on. a response replayed from the index
+ * does not reach Base, so it is not seen by Base.history() and Base.times()
+ */
+public final class StubIndex {
+
+    private static final ConcurrentMap<String, StubIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final String filePath;
+    private final ConcurrentMap<QueryKey, Indexed> entries = new ConcurrentHashMap<>();
+    private final BinaryStub binary;
+    private final Base base;
+
+    private StubIndex(String filePath, BinaryStub binary, Base base) {
+        this.filePath = filePath;
+        this.binary = binary;
+        this.base = base;
+    }
+
+    /**
+     * @param base stub
+     * @return index of the stub file, loaded on first use and when the stub is changed
+     */
+    public static StubIndex of(Base base) {
+        StubIndex index = current(base);
+        if (index != null) {
+            return index;
+        }
+        return INDEXES.compute(base.getFilePath(), (filePath, current) ->
+                current != null && current.base == base ? current : load(filePath, base));
+    }
+
+    /**
+     * does not touch the file system
+     *
+     * @param base stub
+     * @return the loaded index of the stub, otherwise null
+     */
+    public static StubIndex current(Base base) {
+        StubIndex index = INDEXES.get(base.getFilePath());
+        return index != null && index.base == base ? index : null;
+    }
+
+    /**
+     * drops the index of the stub, the next lookup loads the file again
+     * use it when the entries of the stub are changed and the file is not, ex. after Base.clear()
+     *
+     * @param base stub
+     */
+    public static void invalidate(Base base) {
+        invalidate(base.getFilePath());
+    }
+
+    static void invalidate(String filePath) {
+        INDEXES.remove(filePath);
+    }
+
+    public static void invalidateAll() {
+        INDEXES.clear();
+    }
+
+    /**
+     * loads entries of a stub file, a missing file gives an empty index
+     * if an up-to-date binary file accompanies the stub it is mapped instead,
+     * and its entries are decoded when they are looked up
+     *
+     * @param filePath path to the stub file
+     * @return
+     */
+    static StubIndex load(String filePath) {
+        return load(filePath, null);
+    }
+
+    private static StubIndex load(String filePath, Base base) {
+        Path path = Paths.get(filePath);
+        Path binary = BinaryStub.siblingOf(path);
+        if (BinaryStub.isUpToDate(binary, path)) {
+            return new StubIndex(filePath, BinaryStub.open(binary), base);
+        }
+
+        StubIndex index = new StubIndex(filePath, null, base);
+        if (Files.exists(path)) {
+            for (StubEntry entry : TextStub.read(path)) {
+                if (entry.isResponse()) {
+                    index.add(entry.getKeys(), entry.getValues(), false);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param key request key
+     * @return stored values or null
+     */
+    public List<String> get(List<String> key) {
+        List<String> values = find(entries.get(new QueryKey(filePath, key)), key);
+        if (values != null || binary == null) {
+            return values;
+        }
+        List<String> stored = binary.values(key);
+        if (stored == null) {
+            return null;
+        }
+        return add(key, stored, false);
+    }
+
+    /**
+     * adds or replaces the values of the request
+     *
+     * @param key    request key
+     * @param values stored values
+     */
+    public void put(List<String> key, Iterable<String> values) {
+        List<String> copy = new ArrayList<>();
+        values.forEach(copy::add);
+        add(key, Collections.unmodifiableList(copy), true);
+    }
+
+    /**
+     * @return number of loaded entries, entries of a binary file are counted once they are looked up
+     */
+    public int size() {
+        int size = 0;
+        for (Indexed indexed : entries.values()) {
+            for (; indexed != null; indexed = indexed.next) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * keeps the values of the key, entries with the same fingerprint are chained
+     *
+     * @param replace replace the values if the key is indexed, otherwise keep them
+     * @return the values indexed for the key
+     */
+    private List<String> add(List<String> key, List<String> values, boolean replace) {
+        Indexed head = entries.compute(new QueryKey(filePath, key), (queryKey, current) ->
+                !replace && find(current, key) != null ? current :
+                        new Indexed(Collections.unmodifiableList(new ArrayList<>(key)), values, Indexed.without(current, key)));
+        return find(head, key);
+    }
+
+    private static List<String> find(Indexed indexed, List<String> key) {
+        for (; indexed != null; indexed = indexed.next) {
+            if (indexed.key.equals(key)) {
+                return indexed.values;
+            }
+        }
+        return null;
+    }
+
+    private static final class Indexed {
+        final List<String> key;
+        final List<String> values;
+        final Indexed next;
+
+        Indexed(List<String> key, List<String> values, Indexed next) {
+            this.key = key;
+            this.values = values;
+            this.next = next;
+        }
+
+        static Indexed without(Indexed indexed, List<String> key) {
+            if (indexed == null) {
+                return null;
+            }
+            Indexed next = without(indexed.next, key);
+            if (indexed.key.equals(key)) {
+                return next;
+            }
+            return next == indexed.next ? indexed : new Indexed(indexed.key, indexed.values, next);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.anystub;
+
+/**
+ * receives metrics of the stubs: what happened to a request and how long the phases of the exchange took.
+ * the implementation set with use() is taken, otherwise the first one ServiceLoader finds,
+ * otherwise nothing is measured. the methods are called on the exchange threads,
+ * so they should be fast and thread-safe
+ * <p>
+ * see MicrometerStubMetrics to publish them to a MeterRegistry
+ */
+public interface StubMetrics {
+
+    StubMetrics NOOP = new StubMetrics() {
+    };
+
+    enum Outcome {
+        /**
+         * the response is taken from the stub
+         */
+        REPLAYED,
+        /**
+         * the request is sent to the real system and its response is recorded
+         */
+        RECORDED,
+        /**
+         * the request is sent to the real system and its response is not recorded
+         */
+        PASSED_THROUGH,
+        /**
+         * the stub has neither the response nor may send the request
+         */
+        MISSED,
+        /**
+         * the response of an identical running request is reused, see RequestCache
+         */
+        CACHED
+    }
+
+    enum Phase {
+        /**
+         * building the request key, masking and digest of the body included
+         */
+        KEY,
+        /**
+         * finding the response in the stub, loading of the stub file on first use included
+         */
+        LOOKUP,
+        /**
+         * building the response from the stored values
+         */
+        DECODE
+    }
+
+    /**
+     * @param filePath stub file
+     * @param mode     request mode of the stub
+     * @param outcome  what happened to the request
+     */
+    default void request(String filePath, RequestMode mode, Outcome outcome) {
+    }
+
+    /**
+     * @param filePath stub file
+     * @param mode     request mode of the stub
+     * @param phase    measured phase
+     * @param nanos    duration
+     */
+    default void time(String filePath, RequestMode mode, Phase phase, long nanos) {
+    }
+
+    /**
+     * @return metrics used by the stubs
+     */
+    static StubMetrics current() {
+        return StubMetricsHolder.current();
+    }
+
+    /**
+     * replaces the metrics used by the stubs
+     *
+     * @param metrics metrics, null - the one ServiceLoader finds
+     */
+    static void use(StubMetrics metrics) {
+        StubMetricsHolder.use(metrics);
+    }
+}
@@ -0,0 +1,38 @@
+package org.anystub;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * keeps the metrics used by the stubs, see StubMetrics
+ */
+final class StubMetricsHolder {
+
+    private static volatile StubMetrics metrics;
+
+    private StubMetricsHolder() {
+    }
+
+    static StubMetrics current() {
+        StubMetrics res = metrics;
+        if (res == null) {
+            synchronized (StubMetricsHolder.class) {
+                res = metrics;
+                if (res == null) {
+                    res = load();
+                    metrics = res;
+                }
+            }
+        }
+        return res;
+    }
+
+    static void use(StubMetrics value) {
+        metrics = value;
+    }
+
+    private static StubMetrics load() {
+        Iterator<StubMetrics> iterator = ServiceLoader.load(StubMetrics.class).iterator();
+        return iterator.hasNext() ? iterator.next() : StubMetrics.NOOP;
+    }
+}
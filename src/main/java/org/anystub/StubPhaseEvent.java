@@ -0,0 +1,141 @@
+package org.anystub;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * flight recorder event of a phase of an exchange through the stub
+ * the event is disabled by default, enable org.anystub.Phase in the recording settings.
+ * while it is disabled no event is created and the key fingerprint is not computed
+ */
+@Name("org.anystub.Phase")
+@Label("Stub Phase")
+@Description("A phase of an exchange through StubClientHttpConnector or StubExchangeFilterFunction")
+@Category("AnyStub")
+@Enabled(false)
+@StackTrace(false)
+public final class StubPhaseEvent extends Event {
+
+    public static final String CAPTURE = "capture";
+    public static final String KEY = "key";
+    public static final String LOOKUP = "lookup";
+    public static final String UPSTREAM = "upstream";
+    public static final String ENCODE = "encode";
+    public static final String DECODE = "decode";
+
+    /**
+     * never started, so it is never committed
+     */
+    static final StubPhaseEvent NONE = new StubPhaseEvent(null);
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Stub File")
+    private String file;
+
+    @Label("Key Fingerprint")
+    private String key;
+
+    @Label("Request Body Size")
+    @Description("-1 if unknown")
+    @DataAmount
+    private long requestBodySize = -1;
+
+    @Label("Response Body Size")
+    @Description("-1 if unknown")
+    @DataAmount
+    private long responseBodySize = -1;
+
+    private transient List<String> keys;
+    private transient boolean started;
+
+    private StubPhaseEvent(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * begins the event of the phase if the event is enabled
+     *
+     * @param phase phase
+     * @return the event, or a shared one which is never committed
+     */
+    static StubPhaseEvent start(String phase) {
+        if (!NONE.isEnabled()) {
+            return NONE;
+        }
+        StubPhaseEvent event = new StubPhaseEvent(phase);
+        event.started = true;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * times the phase from subscription to its first signal: the value, completion or error.
+     * a phase cancelled before it is not committed
+     *
+     * @param phase  phase
+     * @param source builds the phase, it may fill the event
+     * @return
+     */
+    static <T> Mono<T> timed(String phase, Function<StubPhaseEvent, Mono<T>> source) {
+        if (!NONE.isEnabled()) {
+            return source.apply(NONE);
+        }
+        return Mono.defer(() -> {
+            StubPhaseEvent event = start(phase);
+            return source.apply(event)
+                    .doOnEach(signal -> event.finish());
+        });
+    }
+
+    StubPhaseEvent key(String file, List<String> keys) {
+        if (started) {
+            this.file = file;
+            this.keys = keys;
+        }
+        return this;
+    }
+
+    StubPhaseEvent requestBodySize(long size) {
+        if (started) {
+            this.requestBodySize = size;
+        }
+        return this;
+    }
+
+    StubPhaseEvent responseBodySize(long size) {
+        if (started) {
+            this.responseBodySize = size;
+        }
+        return this;
+    }
+
+    /**
+     * ends the event and commits it if it lasted longer than the threshold of the recording,
+     * the next calls do nothing
+     */
+    void finish() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        end();
+        if (shouldCommit()) {
+            if (keys != null) {
+                key = new QueryKey(file, keys).toString();
+            }
+            commit();
+        }
+    }
+}
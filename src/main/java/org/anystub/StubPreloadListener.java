@@ -0,0 +1,32 @@
+package org.anystub;
+
+import org.junit.platform.launcher.LauncherSession;
+import org.junit.platform.launcher.LauncherSessionListener;
+
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+/**
+ * preloads the stub files of a directory when a test run starts, see StubPreloader.
+ * it is off unless the system property anystub.preload.dir is set, ex.
+ * -Danystub.preload.dir=src/test/resources/anystub; anystub.preload.threads sets the size of the pool,
+ * the number of processors by default. the load time per file is logged
+ */
+public class StubPreloadListener implements LauncherSessionListener {
+
+    public static final String DIRECTORY_PROPERTY = "anystub.preload.dir";
+    public static final String THREADS_PROPERTY = "anystub.preload.threads";
+
+    private static final Logger LOGGER = Logger.getLogger(StubPreloadListener.class.getName());
+
+    @Override
+    public void launcherSessionOpened(LauncherSession session) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return;
+        }
+        int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        StubPreloader.Report report = StubPreloader.preload(Paths.get(directory), threads);
+        LOGGER.info(report::toString);
+    }
+}
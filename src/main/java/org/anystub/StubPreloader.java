@@ -0,0 +1,190 @@
+package org.anystub;
+
+import org.anystub.mgmt.BaseManagerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * loads stub files before the tests, so the first request of a test does not parse its stub.
+ * the stubs are located through BaseManagerFactory, so loaded bases stay in its cache,
+ * and are parsed concurrently on a pool of the given number of threads.
+ * see StubPreloadListener to preload on start of a test run
+ */
+public final class StubPreloader {
+
+    private StubPreloader() {
+    }
+
+    /**
+     * @param ids     settings of the stubs
+     * @param threads size of the pool
+     * @return load time per file
+     */
+    public static Report preload(Collection<AnyStubId> ids, int threads) {
+        return preload(new ArrayList<>(ids), BaseManagerFactory::baseFromSettings, threads);
+    }
+
+    /**
+     * loads the stub files of the directory and its subdirectories,
+     * a file is located by its path relative to the directory as AnyStubId.filename() is.
+     * a file the name is located at outside of the directory is reported as failed, not loaded
+     *
+     * @param directory directory of the stubs, ex. src/test/resources/anystub
+     * @param threads   size of the pool
+     * @return load time per file
+     */
+    public static Report preload(Path directory, int threads) {
+        return preload(directory, BaseManagerFactory::locate, threads);
+    }
+
+    static Report preload(Path directory, Function<String, Base> locate, int threads) {
+        List<String> names;
+        try (Stream<Path> files = Files.walk(directory)) {
+            names = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".yml"))
+                    .map(file -> directory.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return preload(names, name -> located(directory.resolve(name), locate.apply(name)), threads);
+    }
+
+    private static Base located(Path file, Base base) {
+        Path located = Paths.get(base.getFilePath());
+        if (!file.toAbsolutePath().normalize().equals(located.toAbsolutePath().normalize())) {
+            throw new IllegalStateException(String.format("%s is located at %s", file, located));
+        }
+        return base;
+    }
+
+    static <T> Report preload(List<T> stubs, Function<T, Base> locate, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads should be positive");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, stubs.size())), runnable -> {
+            Thread thread = new Thread(runnable, "anystub-preload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        try {
+            List<CompletableFuture<Load>> loads = new ArrayList<>(stubs.size());
+            for (T stub : stubs) {
+                loads.add(CompletableFuture.supplyAsync(() -> load(stub, locate), pool));
+            }
+            List<Load> res = loads.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+            return new Report(res, Duration.ofNanos(System.nanoTime() - started));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static <T> Load load(T stub, Function<T, Base> locate) {
+        long started = System.nanoTime();
+        String file = String.valueOf(stub);
+        try {
+            Base base = locate.apply(stub);
+            file = base.getFilePath();
+            if (base.isNew()) {
+                base.init();
+            }
+            return new Load(file, Duration.ofNanos(System.nanoTime() - started), null);
+        } catch (RuntimeException e) {
+            return new Load(file, Duration.ofNanos(System.nanoTime() - started), e);
+        }
+    }
+
+    /**
+     * load time per file, a file which failed to load keeps the exception
+     */
+    public static final class Report {
+        private final List<Load> loads;
+        private final Duration total;
+
+        Report(List<Load> loads, Duration total) {
+            this.loads = Collections.unmodifiableList(loads);
+            this.total = total;
+        }
+
+        public List<Load> getLoads() {
+            return loads;
+        }
+
+        /**
+         * @return wall time of the preloading
+         */
+        public Duration getTotal() {
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            long failed = loads.stream().filter(load -> load.failure != null).count();
+            StringBuilder res = new StringBuilder()
+                    .append("preloaded ").append(loads.size() - failed).append(" stubs in ")
+                    .append(total.toMillis()).append(" ms");
+            if (failed > 0) {
+                res.append(", ").append(failed).append(" failed");
+            }
+            loads.stream()
+                    .sorted((a, b) -> b.time.compareTo(a.time))
+                    .forEach(load -> {
+                        res.append(System.lineSeparator())
+                                .append(String.format("%8d ms  %s", load.time.toMillis(), load.file));
+                        if (load.failure != null) {
+                            res.append("  failed: ").append(load.failure);
+                        }
+                    });
+            return res.toString();
+        }
+    }
+
+    public static final class Load {
+        private final String file;
+        private final Duration time;
+        private final RuntimeException failure;
+
+        Load(String file, Duration time, RuntimeException failure) {
+            this.file = file;
+            this.time = time;
+            this.failure = failure;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public Duration getTime() {
+            return time;
+        }
+
+        /**
+         * @return the exception the file failed to load with, or null
+         */
+        public RuntimeException getFailure() {
+            return failure;
+        }
+    }
+}
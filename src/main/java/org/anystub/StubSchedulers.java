@@ -0,0 +1,82 @@
+package org.anystub;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * schedulers of the stubs
+ * stub persistence: loading and looking up stub files, saving recorded responses and bodies,
+ * runs on the persistence scheduler, so a blocking read or write never stalls the thread
+ * which emitted the request or the response, ex. a Netty event loop
+ * <p>
+ * with -Danystub.virtualThreads=true persistence runs on virtual threads on Java 21+,
+ * see useVirtualThreads()
+ */
+public final class StubSchedulers {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "anystub.virtualThreads";
+
+    private static volatile Scheduler persistence = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) ? Virtual.SCHEDULER : null;
+
+    private StubSchedulers() {
+    }
+
+    /**
+     * @return the scheduler set with usePersistence, Schedulers.boundedElastic() by default
+     */
+    public static Scheduler persistence() {
+        Scheduler res = persistence;
+        return res != null ? res : Schedulers.boundedElastic();
+    }
+
+    /**
+     * @param scheduler scheduler for stub persistence, null - Schedulers.boundedElastic()
+     */
+    public static void usePersistence(Scheduler scheduler) {
+        persistence = scheduler;
+    }
+
+    /**
+     * runs stub persistence on a new virtual thread per task, so the number of concurrent
+     * blocking reads and writes is not capped by the size of boundedElastic
+     *
+     * @return false if the jvm has no virtual threads (before Java 21), the scheduler is not changed then
+     */
+    public static boolean useVirtualThreads() {
+        Scheduler scheduler = Virtual.SCHEDULER;
+        if (scheduler == null) {
+            return false;
+        }
+        persistence = scheduler;
+        return true;
+    }
+
+    /**
+     * @return true if the jvm has virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        return Virtual.SCHEDULER != null;
+    }
+
+    /**
+     * the project is built for Java 11, so the executor is looked up reflectively
+     */
+    private static final class Virtual {
+        static final Scheduler SCHEDULER = create();
+
+        private static Scheduler create() {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                return Schedulers.fromExecutorService(executor, "anystub-virtual");
+            } catch (ReflectiveOperationException e) {
+                // missing before Java 21, a preview feature on 19 and 20
+                return null;
+            }
+        }
+    }
+}
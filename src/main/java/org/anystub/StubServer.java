@@ -0,0 +1,227 @@
+package org.anystub;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * serves recorded responses of stub files over http, so processes which do not run the stub can use them
+ * <pre>
+ * java -cp ... org.anystub.StubServer [--host 127.0.0.1] [--port 8080] [--base-url http://api.example.com]
+ *     [--settings com.example.SomeTest] stub.yml [stub2.yml ...]
+ * </pre>
+ * a request is matched with the key of Util.getRequestKey built with the given settings,
+ * the settings class is an annotated class: AnySettingsHttp, AnyStubId (requestMasks) and AnySettingsFlux.
+ * the url of the key is the base url followed by the path and the query of the request,
+ * by default the base url is taken from the Host header.
+ * the files are searched in the given order, an up-to-date binary stub is used instead of a text one.
+ * a request without a recorded response gets 404, the server never records
+ */
+public class StubServer implements AutoCloseable {
+
+    @AnySettingsHttp
+    @AnyStubId
+    @AnySettingsFlux
+    private static final class Defaults {
+    }
+
+    private final List<StubIndex> indexes = new ArrayList<>();
+    private final AnySettingsHttp settingsHttp;
+    private final AnyStubId settings;
+    private final AnySettingsFlux settingsFlux;
+    private final String baseUrl;
+    private final ConcurrentMap<QueryKey, ResponseTemplate> templates = new ConcurrentHashMap<>();
+
+    private DisposableServer server;
+
+    /**
+     * @param stubFiles stub files
+     */
+    public StubServer(List<String> stubFiles) {
+        this(stubFiles, Defaults.class, null);
+    }
+
+    /**
+     * @param stubFiles stub files
+     * @param settings  class annotated with the settings the stub files are recorded with
+     * @param baseUrl   scheme and authority of the recorded urls, null - taken from the Host header
+     */
+    public StubServer(List<String> stubFiles, Class<?> settings, String baseUrl) {
+        this(stubFiles,
+                annotation(settings, AnySettingsHttp.class),
+                annotation(settings, AnyStubId.class),
+                annotation(settings, AnySettingsFlux.class),
+                baseUrl);
+    }
+
+    public StubServer(List<String> stubFiles, AnySettingsHttp settingsHttp, AnyStubId settings,
+                      AnySettingsFlux settingsFlux, String baseUrl) {
+        for (String stubFile : stubFiles) {
+            indexes.add(StubIndex.load(stubFile));
+        }
+        this.settingsHttp = settingsHttp;
+        this.settings = settings;
+        this.settingsFlux = settingsFlux;
+        this.baseUrl = baseUrl == null || !baseUrl.endsWith("/") ? baseUrl : baseUrl.substring(0, baseUrl.length() - 1);
+    }
+
+    /**
+     * @param host address to bind
+     * @param port port to bind, 0 - any free port
+     * @return
+     */
+    public StubServer start(String host, int port) {
+        server = HttpServer.create()
+                .host(host)
+                .port(port)
+                .handle(this::handle)
+                .bindNow();
+        return this;
+    }
+
+    /**
+     * @return bound port
+     */
+    public int port() {
+        return server.port();
+    }
+
+    /**
+     * blocks until the server is stopped
+     */
+    public void await() {
+        server.onDispose().block();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        HttpMethod method = HttpMethod.valueOf(request.method().name());
+        URI uri = URI.create(urlOf(request));
+
+        MockClientHttpRequest captured = new MockClientHttpRequest(method, uri);
+        request.requestHeaders().forEach((Map.Entry<String, String> header) ->
+                captured.getHeaders().add(header.getKey(), header.getValue()));
+
+        return request.receive()
+                .aggregate()
+                .asByteArray()
+                .defaultIfEmpty(new byte[0])
+                .flatMap(body -> captured
+                        .writeWith(body.length == 0 ? Flux.empty() : Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))
+                        .then(Mono.defer(() -> Util.getRequestKey(method, uri, captured, settingsHttp, settings, settingsFlux))))
+                .flatMap(key -> respond(key, response));
+    }
+
+    private Mono<Void> respond(List<String> key, HttpServerResponse response) {
+        for (StubIndex index : indexes) {
+            List<String> values = index.get(key);
+            if (values != null) {
+                ResponseTemplate template = templates.computeIfAbsent(new QueryKey(index.getFilePath(), key),
+                        k -> ResponseTemplate.decode(index.getFilePath(), values));
+                return send(template, response);
+            }
+        }
+        return response.status(HttpResponseStatus.NOT_FOUND)
+                .header(HttpHeaderNames.CONTENT_TYPE, "text/plain")
+                .sendString(Mono.just("no recorded response for " + key), StandardCharsets.UTF_8)
+                .then();
+    }
+
+    private static Mono<Void> send(ResponseTemplate template, HttpServerResponse response) {
+        response.status(template.status());
+        template.headers().forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && !HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                response.responseHeaders().add(name, values);
+            }
+        });
+        if (!template.hasBody()) {
+            return response.send().then();
+        }
+        return template.resolveBody().flatMap(buffer -> {
+            ByteBuf body = Unpooled.wrappedBuffer(buffer);
+            response.responseHeaders().set(HttpHeaderNames.CONTENT_LENGTH, body.readableBytes());
+            return response.send(Mono.just(body)).then();
+        });
+    }
+
+    private String urlOf(HttpServerRequest request) {
+        // the root path is recorded as http://host:port, without the trailing slash
+        String path = "/".equals(request.uri()) ? "" : request.uri();
+        if (baseUrl != null) {
+            return baseUrl + path;
+        }
+        return request.scheme() + "://" + request.requestHeaders().get(HttpHeaderNames.HOST) + path;
+    }
+
+    private static <A extends Annotation> A annotation(Class<?> settings, Class<A> type) {
+        A res = settings.getAnnotation(type);
+        return res != null ? res : Defaults.class.getAnnotation(type);
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        String host = "127.0.0.1";
+        int port = 8080;
+        String baseUrl = null;
+        Class<?> settings = Defaults.class;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--") && i + 1 == args.length) {
+                usage();
+                return;
+            }
+            if ("--host".equals(arg)) {
+                host = args[++i];
+            } else if ("--port".equals(arg)) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--base-url".equals(arg)) {
+                baseUrl = args[++i];
+            } else if ("--settings".equals(arg)) {
+                settings = Class.forName(args[++i]);
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty()) {
+            usage();
+            return;
+        }
+
+        StubServer server = new StubServer(files, settings, baseUrl).start(host, port);
+        System.out.println("serving " + files + " on " + host + ":" + server.port());
+        server.await();
+    }
+
+    private static void usage() {
+        System.err.println("usage: StubServer [--host <host>] [--port <port>] [--base-url <url>] [--settings <class>] <stub.yml>...");
+    }
+}
@@ -0,0 +1,127 @@
+package org.anystub;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * reads and writes the text (yaml) stub format:
+ * documents of exception, keys and values lists separated by ---
+ */
+public final class TextStub {
+
+    private TextStub() {
+    }
+
+    /**
+     * @param path stub file
+     * @return entries in the order of the file
+     */
+    public static List<StubEntry> read(Path path) {
+        LoaderOptions options = new LoaderOptions();
+        options.setCodePointLimit(Integer.MAX_VALUE);
+        List<StubEntry> res = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for (Object document : new Yaml(options).loadAll(reader)) {
+                if (!(document instanceof Map)) {
+                    continue;
+                }
+                Map<?, ?> map = (Map<?, ?>) document;
+                res.add(new StubEntry(strings(map.get("keys")),
+                        strings(map.get("exception")),
+                        strings(map.get("values"))));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res;
+    }
+
+    /**
+     * replaces the content of the stub file, creates the file if it is missing
+     *
+     * @param path    stub file
+     * @param entries entries
+     */
+    public static void write(Path path, List<StubEntry> entries) {
+        try {
+            createParent(path);
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                dump(writer, entries);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * appends entries to the end of the stub file with a single write, creates the file if it is missing
+     *
+     * @param path    stub file
+     * @param entries entries
+     */
+    public static void append(Path path, List<StubEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            createParent(path);
+            boolean empty = !Files.exists(path) || Files.size(path) == 0;
+            StringWriter text = new StringWriter();
+            if (!empty) {
+                text.write("---\n");
+            }
+            dump(text, entries);
+            Files.write(path, text.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void createParent(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    private static void dump(Writer writer, List<StubEntry> entries) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.AUTO);
+        List<Map<String, List<String>>> documents = new ArrayList<>(entries.size());
+        for (StubEntry entry : entries) {
+            Map<String, List<String>> document = new LinkedHashMap<>();
+            document.put("exception", entry.getException());
+            document.put("keys", entry.getKeys());
+            document.put("values", entry.getValues());
+            documents.add(document);
+        }
+        new Yaml(options).dumpAll(documents.iterator(), writer);
+    }
+
+    private static List<String> strings(Object list) {
+        List<String> res = new ArrayList<>();
+        if (list instanceof Collection) {
+            for (Object item : (Collection<?>) list) {
+                res.add(item == null ? null : item.toString());
+            }
+        }
+        return res;
+    }
+}
@@ -3,6 +3,8 @@ package org.anystub;
 import org.anystub.mgmt.BaseManagerFactory;
 import org.anystub.mgmt.MTCache;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
@@ -10,15 +12,23 @@ import org.springframework.http.HttpStatusCode;
 import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import reactor.test.StepVerifierOptions;
 import reactor.util.context.Context;
 import reactor.util.context.ContextView;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,6 +40,9 @@ import static org.anystub.StringUtil.toCharacterString;
 
 public class Util {
     public static final String HEADER_MASK = "^[A-Za-z0-9\\-]+: .+";
+    public static final Pattern HEADER_PATTERN = Pattern.compile(HEADER_MASK);
+
+    private static final int DIGEST_CHUNK = 8192;
 
     private Util() {
     }
@@ -40,7 +53,7 @@ public class Util {
      */
     public static List<String> filterHeaders(HttpHeaders headers) {
 
-        AnySettingsHttp settings = AnySettingsHttpExtractor.httpSettings();
+        AnySettingsHttp settings = SettingsRegistry.settingsHttp();
         return filterHeaders(headers, settings);
     }
 
@@ -61,36 +74,194 @@ public class Util {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * tells a header line from a body, same as HEADER_PATTERN.matcher(line).matches()
+     * the name is scanned up to the first ": ", the rest of the line is only checked
+     * for line terminators, so a body is rejected at its first character in most cases
+     *
+     * @param line
+     * @return
+     */
+    public static boolean isHeader(String line) {
+        int length = line.length();
+        int i = 0;
+        while (i < length && isHeaderNameChar(line.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i + 2 >= length || line.charAt(i) != ':' || line.charAt(i + 1) != ' ') {
+            return false;
+        }
+        for (int j = i + 2; j < length; j++) {
+            char c = line.charAt(j);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHeaderNameChar(char c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == '-';
+    }
+
     public static String headerToString(HttpHeaders headers, String h) {
         return String.format("%s: %s", h, String.join(", ", headers.getOrEmpty(h)));
     }
 
 
     public static Mono<String> extractStringMono(Flux<DataBuffer> body) {
-        return body.map(dataBuffer ->
-                        StringUtil.readStream(dataBuffer.asInputStream(true)))
+        return extractBytesMono(body)
+                .map(Util::bodyToString);
+    }
+
+    /**
+     * stored form of a body, StringUtil.recoverBinaryData restores the bytes
+     *
+     * @param body
+     * @return
+     */
+    public static String bodyToString(byte[] body) {
+        String bodyString = toCharacterString(body);
+        if (isHeader(bodyString) || Latency.isLatency(bodyString) || isBodyMarker(bodyString)) {
+            bodyString = addTextPrefix(bodyString);
+        }
+        return bodyString;
+    }
+
+    /**
+     * @param value stored body
+     * @return true if the value is a reference to BodyStore or a compressed body rather than the body itself
+     */
+    public static boolean isBodyMarker(String value) {
+        return BodyStore.isReference(value) || BodyCompression.isCompressed(value);
+    }
+
+    /**
+     * stored form of a body, a body over AnySettingsFlux.bodyFileThreshold() is written to BodyStore
+     * and the reference to it is returned. with AnySettingsFlux.compressBodies() a body is stored compressed
+     * when that is shorter
+     *
+     * @param body         body
+     * @param stubFilePath path to the stub file
+     * @param settingsFlux settings
+     * @return
+     */
+    public static String bodyToString(byte[] body, String stubFilePath, AnySettingsFlux settingsFlux) {
+        long threshold = settingsFlux.bodyFileThreshold();
+        if (threshold > 0 && body.length > threshold) {
+            return BodyStore.write(stubFilePath, body);
+        }
+        if (settingsFlux.compressBodies()) {
+            String compressed = BodyCompression.compress(body);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        return bodyToString(body);
+    }
+
+    /**
+     * aggregates the body in a single array of the exact size,
+     * every byte is copied once and each buffer is released right after it is copied
+     *
+     * @param body
+     * @return
+     */
+    public static Mono<byte[]> extractBytesMono(Flux<DataBuffer> body) {
+        return body
                 .collectList()
-                .map(block -> {
-                    if (block == null || block.isEmpty()) {
-                        return new byte[0];
-                    } else {
-                        return
-                                block.stream()
-                                        .reduce(new byte[0], (result, bytes2) -> {
-                                            int v = result.length;
-                                            result = Arrays.copyOf(result, v + bytes2.length);
-                                            System.arraycopy(bytes2, 0, result, v, bytes2.length);
-                                            return result;
-                                        });
+                .map(buffers -> {
+                    int size = 0;
+                    for (DataBuffer buffer : buffers) {
+                        size += buffer.readableByteCount();
                     }
-                })
-                .map(bodyContext -> {
-                    String bodyString = toCharacterString(bodyContext);
-                    if (bodyString.matches(HEADER_MASK)) {
-                        bodyString = addTextPrefix(bodyString);
+                    byte[] result = new byte[size];
+                    int position = 0;
+                    for (DataBuffer buffer : buffers) {
+                        int count = buffer.readableByteCount();
+                        buffer.read(result, position, count);
+                        position += count;
+                        DataBufferUtils.release(buffer);
                     }
-                    return bodyString;
-                });
+                    return result;
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * body of a replayed response. the recorded bytes are passed to buffers as is,
+     * text decoding is left to the consumer and the charset of its Content-Type.
+     * a single buffer is a read-only view of the bytes, so they can be replayed again
+     *
+     * @param bytes     recorded body
+     * @param chunkSize max size of a buffer, 0 - the body is emitted in a single buffer
+     * @param factory   allocates buffers
+     * @return
+     */
+    public static Flux<DataBuffer> replayBody(byte[] bytes, int chunkSize, DataBufferFactory factory) {
+        if (chunkSize > 0) {
+            return chunkedBody(bytes, chunkSize, factory);
+        }
+        return Flux.defer(() -> Flux.just(factory.wrap(ByteBuffer.wrap(bytes).asReadOnlyBuffer())));
+    }
+
+    /**
+     * body of a replayed response from a buffer, ex. a mapped file. the buffers are read-only views
+     * of the body, no bytes are copied
+     *
+     * @param body      body, its position and limit are not changed
+     * @param chunkSize max size of a buffer, 0 - the body is emitted in a single buffer
+     * @param factory   wraps the views
+     * @return
+     */
+    public static Flux<DataBuffer> replayBody(ByteBuffer body, int chunkSize, DataBufferFactory factory) {
+        if (chunkSize <= 0) {
+            return Flux.defer(() -> Flux.just(factory.wrap(body.asReadOnlyBuffer())));
+        }
+        return Flux.generate(() -> body.position(), (Integer position, SynchronousSink<DataBuffer> sink) -> {
+            if (position >= body.limit()) {
+                sink.complete();
+                return position;
+            }
+            int count = Math.min(chunkSize, body.limit() - position);
+            ByteBuffer chunk = body.asReadOnlyBuffer();
+            chunk.position(position);
+            chunk.limit(position + count);
+            sink.next(factory.wrap(chunk.slice()));
+            if (position + count >= body.limit()) {
+                sink.complete();
+            }
+            return position + count;
+        });
+    }
+
+    /**
+     * emits the body in buffers of chunkSize bytes, a buffer is allocated only when it is requested
+     *
+     * @param bytes     body
+     * @param chunkSize max size of a buffer
+     * @param factory   allocates buffers
+     * @return
+     */
+    public static Flux<DataBuffer> chunkedBody(byte[] bytes, int chunkSize, DataBufferFactory factory) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize should be positive");
+        }
+        return Flux.generate(() -> 0, (Integer position, SynchronousSink<DataBuffer> sink) -> {
+            if (position >= bytes.length) {
+                sink.complete();
+                return position;
+            }
+            int count = Math.min(chunkSize, bytes.length - position);
+            sink.next(factory.allocateBuffer(count).write(bytes, position, count));
+            if (position + count >= bytes.length) {
+                sink.complete();
+            }
+            return position + count;
+        });
     }
 
     /**
@@ -105,6 +276,23 @@ public class Util {
                                                    MockClientHttpRequest request,
                                                    AnySettingsHttp settingsHttp,
                                                    AnyStubId settings) {
+        return getRequestKey(method, uri, request, settingsHttp, settings, AnySettingsFluxExtractor.defaultSettings());
+    }
+
+    /**
+     * builds key for the request according to http setting,
+     * with AnySettingsFlux.digestRequestBody() the body is replaced with its digest, see digestBody
+     *
+     * @param method
+     * @param uri
+     * @param request
+     * @return
+     */
+    public static Mono<List<String>> getRequestKey(HttpMethod method, URI uri,
+                                                   MockClientHttpRequest request,
+                                                   AnySettingsHttp settingsHttp,
+                                                   AnyStubId settings,
+                                                   AnySettingsFlux settingsFlux) {
         ArrayList<String> key = new ArrayList<>();
         key.add(method.name());
         key.add("HTTP/1.1");
@@ -119,10 +307,15 @@ public class Util {
                     return request.getBodyAsString()
                             .switchIfEmpty(Mono.just(""))
                             .map((String body) -> {
-                                String maskedBody = SettingsUtil.maskBody(body, settings);
-                                String safeBody = isText(maskedBody) ?
-                                        escapeCharacterString(maskedBody) :
-                                        toCharacterString(maskedBody.getBytes(StandardCharsets.UTF_8));
+                                String maskedBody = maskBody(body, settings);
+                                String safeBody;
+                                if (settingsFlux.digestRequestBody()) {
+                                    safeBody = digestBody(maskedBody, settingsFlux.digestPreview());
+                                } else {
+                                    safeBody = isText(maskedBody) ?
+                                            escapeCharacterString(maskedBody) :
+                                            toCharacterString(maskedBody.getBytes(StandardCharsets.UTF_8));
+                                }
 
                                 return Stream.concat(Stream.of(keys), Stream.of(safeBody))
                                         .collect(Collectors.toList());
@@ -131,16 +324,73 @@ public class Util {
                 });
     }
 
+    /**
+     * masks the body with precompiled masks of the settings, see BodyMasker
+     *
+     * @param body     request body
+     * @param settings stub settings
+     * @return
+     */
+    public static String maskBody(String body, AnyStubId settings) {
+        return settings == null ? body : BodyMasker.of(settings).mask(body);
+    }
+
+    /**
+     * key element of a request body of constant size: SHA-256:&lt;hex&gt; and, for a text body,
+     * up to preview escaped characters of the body after a space.
+     * the body is hashed as utf-8 in chunks without a copy of the whole body
+     *
+     * @param body    masked request body
+     * @param preview number of characters to keep, 0 - no preview
+     * @return
+     */
+    public static String digestBody(String body, int preview) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.wrap(body);
+        ByteBuffer out = ByteBuffer.allocate(DIGEST_CHUNK);
+        boolean done = false;
+        while (!done) {
+            CoderResult result = encoder.encode(in, out, true);
+            if (result.isUnderflow()) {
+                encoder.flush(out);
+                done = true;
+            }
+            out.flip();
+            digest.update(out);
+            out.clear();
+        }
+
+        StringBuilder res = new StringBuilder("SHA-256:");
+        for (byte b : digest.digest()) {
+            res.append(Character.forDigit((b >> 4) & 0xf, 16));
+            res.append(Character.forDigit(b & 0xf, 16));
+        }
+        if (preview > 0 && !body.isEmpty() && isText(body)) {
+            String head = body.length() > preview ? body.substring(0, preview) : body;
+            res.append(' ').append(escapeCharacterString(head));
+        }
+        return res.toString();
+    }
+
     public static ContextView anystubContext() {
         Context context = Context.empty();
-        AnyStubId anyStubId = AnyStubFileLocator.discoverFile();
+        AnyStubId anyStubId = SettingsRegistry.anyStubId();
         if (anyStubId!=null) {
             context = context.put(AnyStubId.class, anyStubId);
         }
-        AnySettingsHttp anySettingsHttp = AnySettingsHttpExtractor.httpSettings();
+        AnySettingsHttp anySettingsHttp = SettingsRegistry.settingsHttp();
         if (anySettingsHttp!=null) {
             context = context.put(AnySettingsHttp.class, anySettingsHttp);
         }
+        context = context.put(AnySettingsFlux.class, SettingsRegistry.settingsFlux());
         return context;
     }
 
@@ -168,12 +418,24 @@ public class Util {
         return BaseManagerFactory.locate();
     }
 
+    /**
+     * settings from the context, discovery runs only if the context has none
+     * @param ctx
+     * @return
+     */
     public static AnySettingsHttp extractHttpOptions(ContextView ctx) {
-        return ctx.getOrDefault(AnySettingsHttp.class, AnySettingsHttpExtractor.httpSettings());
+        return ctx.<AnySettingsHttp>getOrEmpty(AnySettingsHttp.class)
+                .orElseGet(SettingsRegistry::settingsHttp);
     }
 
     public static AnyStubId extractOptions(ContextView ctx) {
-        return ctx.getOrDefault(AnyStubId.class, AnyStubFileLocator.discoverFile());
+        return ctx.<AnyStubId>getOrEmpty(AnyStubId.class)
+                .orElseGet(SettingsRegistry::anyStubId);
+    }
+
+    public static AnySettingsFlux extractFluxOptions(ContextView ctx) {
+        return ctx.<AnySettingsFlux>getOrEmpty(AnySettingsFlux.class)
+                .orElseGet(SettingsRegistry::settingsFlux);
     }
 
     public static String code2Text(HttpStatusCode code) {
@@ -0,0 +1,117 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+class BinaryStubTest {
+
+    private static final Path TEXT_STUB = Paths.get("src/test/resources/anystub/StubClientHttpConnector2Test-testCharsetReplay.yml");
+
+    @Test
+    void testRoundTrip(@TempDir Path dir) {
+        List<StubEntry> entries = List.of(
+                new StubEntry(List.of("GET", "HTTP/1.1", "http://localhost:8080/1"), List.of(),
+                        List.of("HTTP/1.1", "200", "OK", "Content-Type: text/plain", "first")),
+                new StubEntry(List.of("GET", "HTTP/1.1", "http://localhost:8080/2"), List.of(),
+                        List.of("HTTP/1.1", "204", "No Content")),
+                new StubEntry(List.of("GET", "HTTP/1.1", "http://localhost:8081"), List.of("java.net.ConnectException", "refused"),
+                        List.of()));
+        Path binary = dir.resolve("stub.bin");
+
+        BinaryStub.write(binary, entries);
+        BinaryStub stub = BinaryStub.open(binary);
+
+        Assertions.assertEquals(3, stub.size());
+        for (StubEntry entry : entries) {
+            StubEntry found = stub.get(entry.getKeys());
+            Assertions.assertEquals(entry.getKeys(), found.getKeys());
+            Assertions.assertEquals(entry.getException(), found.getException());
+            Assertions.assertEquals(entry.getValues(), found.getValues());
+        }
+        Assertions.assertNull(stub.get(List.of("GET", "HTTP/1.1", "http://localhost:8080/3")));
+    }
+
+    @Test
+    void testConverter(@TempDir Path dir) {
+        Path binary = dir.resolve("stub.bin");
+        Path text = dir.resolve("stub.yml");
+
+        StubConverter.toBinary(TEXT_STUB, binary);
+        StubConverter.toText(binary, text);
+
+        StubEntry original = TextStub.read(TEXT_STUB).get(0);
+        StubEntry converted = TextStub.read(text).get(0);
+        Assertions.assertEquals(original.getKeys(), converted.getKeys());
+        Assertions.assertEquals(original.getValues().subList(0, 4), converted.getValues().subList(0, 4));
+        Assertions.assertArrayEquals(StringUtil.recoverBinaryData(original.getValues().get(4)),
+                StringUtil.recoverBinaryData(converted.getValues().get(4)));
+    }
+
+    @Test
+    void testIndexUsesBinary(@TempDir Path dir) throws Exception {
+        Path text = dir.resolve("stub.yml");
+        Files.copy(TEXT_STUB, text);
+        StubConverter.toBinary(text, BinaryStub.siblingOf(text));
+
+        StubIndex index = StubIndex.load(text.toString());
+        List<String> key = List.of("GET", "HTTP/1.1", "http://localhost:8080/latin1");
+
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertNotNull(index.get(key));
+        Assertions.assertSame(index.get(key), index.get(key));
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    void testSameFingerprint(@TempDir Path dir) throws Exception {
+        List<String> first = List.of("GET", "HTTP/1.1", "http://localhost:8080/1");
+        List<String> second = List.of("GET", "HTTP/1.1", "http://localhost:8080/2");
+        Path binary = dir.resolve("stub.bin");
+        BinaryStub.write(binary, List.of(
+                new StubEntry(first, List.of(), List.of("HTTP/1.1", "200", "OK", "first")),
+                new StubEntry(second, List.of(), List.of("HTTP/1.1", "200", "OK", "second"))));
+
+        // both slots get the fingerprint of the first slot and the entries are swapped,
+        // so the first slot points to an entry with other keys
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(binary));
+        int slot0 = BinaryStub.HEADER_SIZE;
+        int slot1 = slot0 + BinaryStub.SLOT_SIZE;
+        long offset0 = file.getLong(slot0 + 16);
+        file.putLong(slot1, file.getLong(slot0));
+        file.putLong(slot1 + 8, file.getLong(slot0 + 8));
+        file.putLong(slot0 + 16, file.getLong(slot1 + 16));
+        file.putLong(slot1 + 16, offset0);
+        Files.write(binary, file.array());
+
+        BinaryStub stub = BinaryStub.open(binary);
+        StubEntry entry = stub.entries().get(1);
+        Assertions.assertEquals(entry.getKeys(), stub.get(entry.getKeys()).getKeys());
+        Assertions.assertEquals(entry.getValues(), stub.values(entry.getKeys()));
+        Assertions.assertNull(stub.get(stub.entries().get(0).getKeys()));
+    }
+
+    @Test
+    void testRawBody(@TempDir Path dir) {
+        List<String> key = List.of("GET", "HTTP/1.1", "http://localhost:8080/1");
+        Path binary = dir.resolve("stub.bin");
+        BinaryStub.write(binary, List.of(
+                new StubEntry(key, List.of(), List.of("HTTP/1.1", "200", "OK", "Content-Type: text/plain", "body"))));
+
+        List<String> values = BinaryStub.open(binary).values(key);
+        Assertions.assertTrue(values instanceof BinaryStub.Values);
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "Content-Type: text/plain", "body"), values);
+
+        ResponseTemplate template = ResponseTemplate.decode(binary.toString(), values);
+        Assertions.assertEquals(ByteBuffer.wrap("body".getBytes(StandardCharsets.UTF_8)), template.bodyBuffer());
+        Assertions.assertEquals("text/plain", template.headers().getFirst("Content-Type"));
+        Assertions.assertTrue(template.decodedFrom(values));
+    }
+}
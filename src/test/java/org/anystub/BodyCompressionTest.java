@@ -0,0 +1,64 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class BodyCompressionTest {
+
+    private static final byte[] JSON = "[{\"id\":1,\"name\":\"test\"},{\"id\":2,\"name\":\"test\"},{\"id\":3,\"name\":\"test\"},{\"id\":4,\"name\":\"test\"}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testRoundTrip() {
+        String compressed = BodyCompression.compress(JSON);
+
+        Assertions.assertTrue(BodyCompression.isCompressed(compressed));
+        Assertions.assertTrue(compressed.length() < JSON.length);
+        Assertions.assertArrayEquals(JSON, BodyCompression.decompress(compressed));
+    }
+
+    @Test
+    void testShortBody() {
+        Assertions.assertNull(BodyCompression.compress("ok".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @AnySettingsFlux(compressBodies = true)
+    void testEncodeDecode() {
+        AnySettingsFlux settings = SettingsRegistry.settingsFlux();
+
+        String stored = Util.bodyToString(JSON, "stub.yml", settings);
+        Assertions.assertTrue(stored.startsWith(BodyCompression.PREFIX));
+
+        ResponseTemplate template = ResponseTemplate.decode("stub.yml", List.of("HTTP/1.1", "200", "OK", stored));
+        StepVerifier.create(DataBufferUtils.join(template.body(16)).map(buffer -> buffer.toString(StandardCharsets.UTF_8)))
+                .expectNext(new String(JSON, StandardCharsets.UTF_8))
+                .verifyComplete();
+    }
+
+    @Test
+    void testMarkerLikeBody() {
+        byte[] text = "@anystub-gzip/1 abc=".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertFalse(BodyCompression.isCompressed("@anystub-gzip/1 not base64!"));
+        Assertions.assertNotEquals("@anystub-gzip/1 abc=", Util.bodyToString(text));
+    }
+
+    @Test
+    void testLegacyBody() {
+        // a plain body of a stub recorded before the compression, it is kept as is
+        String legacy = "GZIP abc=";
+
+        ResponseTemplate template = ResponseTemplate.decode("stub.yml", List.of("HTTP/1.1", "200", "OK", legacy));
+
+        Assertions.assertFalse(BodyCompression.isCompressed(legacy));
+        StepVerifier.create(DataBufferUtils.join(template.body(0)).map(buffer -> buffer.toString(StandardCharsets.UTF_8)))
+                .expectNext(legacy)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,54 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BodyMaskerTest {
+
+    @Test
+    @AnyStubId(requestMasks = {"secret", "password", ": ....-.* ", "\\d{4},\\d{1,2},\\d{1,2}"})
+    void testMask() {
+        AnyStubId settings = SettingsRegistry.anyStubId();
+        String body = "{\"code\":23,\"msg\":\"hypothetical request containing a secret data like a password, " +
+                "or a variable timestamp: 2024-10-17T10:11:12.123 in the middle of request\",\"date\":[2024,10,17]}";
+
+        String masked = Util.maskBody(body, settings);
+
+        Assertions.assertEquals("{\"code\":23,\"msg\":\"hypothetical request containing a ... data like a ..., " +
+                "or a variable timestamp...request\",\"date\":[...]}", masked);
+        Assertions.assertEquals(SettingsUtil.maskBody(body, settings), masked);
+        Assertions.assertSame(BodyMasker.of(settings), BodyMasker.of(settings));
+    }
+
+    @Test
+    @AnyStubId(requestMasks = {"b", "abc"})
+    void testOverlappingMasks() {
+        AnyStubId settings = SettingsRegistry.anyStubId();
+
+        Assertions.assertEquals("a...c", Util.maskBody("abc", settings));
+        Assertions.assertEquals(SettingsUtil.maskBody("abc", settings), Util.maskBody("abc", settings));
+    }
+
+    @Test
+    @AnyStubId(requestMasks = {"a", "\\.\\.\\.x"})
+    void testMaskSeesPreviousReplacements() {
+        AnyStubId settings = SettingsRegistry.anyStubId();
+
+        Assertions.assertEquals("...-...", Util.maskBody("ax-ax", settings));
+        Assertions.assertEquals(SettingsUtil.maskBody("ax-ax", settings), Util.maskBody("ax-ax", settings));
+    }
+
+    @Test
+    void testBackReference() {
+        BodyMasker masker = BodyMasker.compile("(\\w)\\1", "x");
+
+        Assertions.assertEquals("...-...y", masker.mask("aa-xy"));
+    }
+
+    @Test
+    void testNoMasks() {
+        Assertions.assertTrue(BodyMasker.compile().isEmpty());
+        Assertions.assertEquals("body", BodyMasker.compile().mask("body"));
+        Assertions.assertEquals("body", Util.maskBody("body", null));
+    }
+}
@@ -0,0 +1,95 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+class BodyStoreTest {
+
+    @Test
+    @AnySettingsFlux(bodyFileThreshold = 16)
+    void testThreshold(@TempDir Path dir) throws Exception {
+        String stub = dir.resolve("stub.yml").toString();
+        AnySettingsFlux settings = SettingsRegistry.settingsFlux();
+        byte[] small = "small body".getBytes(StandardCharsets.UTF_8);
+        byte[] large = "a large body over the threshold".getBytes(StandardCharsets.UTF_8);
+
+        Assertions.assertFalse(BodyStore.isReference(Util.bodyToString(small, stub, settings)));
+
+        String reference = Util.bodyToString(large, stub, settings);
+        Assertions.assertTrue(BodyStore.isReference(reference));
+        Assertions.assertEquals(reference, Util.bodyToString(large, stub, settings));
+        Assertions.assertTrue(reference.endsWith(" " + large.length));
+        try (var files = Files.list(dir.resolve(BodyStore.DIRECTORY))) {
+            Assertions.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testReplay(@TempDir Path dir) {
+        String stub = dir.resolve("stub.yml").toString();
+        byte[] body = new byte[100_000];
+        Arrays.fill(body, (byte) 'x');
+        String reference = BodyStore.write(stub, body);
+
+        ResponseTemplate template = ResponseTemplate.decode(stub, List.of("HTTP/1.1", "200", "OK",
+                "Content-Type: text/plain", reference));
+
+        Assertions.assertTrue(template.hasBody());
+        for (int chunkSize : new int[]{0, 8192}) {
+            StepVerifier.create(DataBufferUtils.join(template.body(chunkSize)).map(BodyStoreTest::bytes))
+                    .expectNextMatches(bytes -> Arrays.equals(body, bytes))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void testMissingFile(@TempDir Path dir) {
+        String stub = dir.resolve("stub.yml").toString();
+        String reference = BodyStore.REFERENCE_PREFIX + "0".repeat(64) + " 10";
+
+        ResponseTemplate template = ResponseTemplate.decode(stub, List.of("HTTP/1.1", "200", "OK", reference));
+
+        StepVerifier.create(Flux.from(template.body(0)))
+                .expectError()
+                .verify();
+    }
+
+    @Test
+    void testReferenceLikeBody() {
+        Assertions.assertFalse(BodyStore.isReference("@anystub-bodyfile/1 not a hash"));
+        String text = BodyStore.REFERENCE_PREFIX + "0".repeat(64) + " 10";
+        Assertions.assertTrue(BodyStore.isReference(text));
+        Assertions.assertNotEquals(text, Util.bodyToString(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testLegacyBody(@TempDir Path dir) {
+        // a plain body of a stub recorded before the body files, it is kept as is
+        String legacy = "BODYFILE " + "0".repeat(64) + " 10";
+
+        ResponseTemplate template = ResponseTemplate.decode(dir.resolve("stub.yml").toString(),
+                List.of("HTTP/1.1", "200", "OK", legacy));
+
+        Assertions.assertFalse(BodyStore.isReference(legacy));
+        StepVerifier.create(DataBufferUtils.join(template.body(0)).map(BodyStoreTest::bytes))
+                .expectNextMatches(bytes -> legacy.equals(new String(bytes, StandardCharsets.UTF_8)))
+                .verifyComplete();
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] res = new byte[buffer.readableByteCount()];
+        buffer.read(res);
+        return res;
+    }
+}
@@ -0,0 +1,83 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class LatencyTest {
+
+    @Test
+    void testParse() {
+        Latency latency = Latency.parse("@anystub-latency: 2000.000 5000.500");
+
+        Assertions.assertEquals("@anystub-latency: 2000.000 5000.500", latency.toString());
+        Assertions.assertEquals(Duration.ofSeconds(2), latency.headersDelay(1));
+        Assertions.assertEquals(Duration.ofMillis(3000).plusNanos(500_000), latency.bodyDelay(1));
+        Assertions.assertEquals(Duration.ofSeconds(1), latency.headersDelay(0.5));
+        Assertions.assertEquals(Duration.ZERO, latency.headersDelay(0));
+        Assertions.assertEquals(Duration.ZERO, Latency.NONE.bodyDelay(1));
+    }
+
+    @Test
+    void testTemplate() {
+        ResponseTemplate template = ResponseTemplate.decode("", List.of("HTTP/1.1", "200", "OK",
+                "Content-Type: text/plain", "@anystub-latency: 10.000 30.000", "body"));
+
+        Assertions.assertFalse(template.headers().containsKey(Latency.NAME));
+        Assertions.assertEquals("text/plain", template.headers().getFirst("Content-Type"));
+        Assertions.assertEquals(Duration.ofMillis(10), template.latency().headersDelay(1));
+        Assertions.assertEquals(Duration.ofMillis(20), template.latency().bodyDelay(1));
+
+        template = ResponseTemplate.decode("", List.of("HTTP/1.1", "200", "OK", "body"));
+        Assertions.assertSame(Latency.NONE, template.latency());
+    }
+
+    @Test
+    void testMeasure() {
+        Iterable<String> values = Latency.measure(Mono.just("response").delayElement(Duration.ofMillis(50)),
+                        (response, bodyRead) -> Mono.<Iterable<String>>just(List.of("HTTP/1.1", "200", "OK", "Content-Type: text/plain", response))
+                                .delayElement(Duration.ofMillis(50)))
+                .block();
+
+        List<String> list = new ArrayList<>();
+        values.forEach(list::add);
+        Assertions.assertEquals(6, list.size());
+        Assertions.assertEquals("response", list.get(5));
+        Assertions.assertTrue(Latency.isLatency(list.get(4)));
+        Latency latency = Latency.parse(list.get(4));
+        Assertions.assertTrue(latency.headersDelay(1).toMillis() >= 50);
+        Assertions.assertTrue(latency.bodyDelay(1).toMillis() >= 40);
+    }
+
+    @Test
+    void testMeasureToLastByte() {
+        Iterable<String> values = Latency.measure(Mono.just("response"),
+                        (response, bodyRead) -> Mono.just(response)
+                                .delayElement(Duration.ofMillis(20))
+                                .doOnNext(body -> bodyRead.run())
+                                // storing the body is not upstream time
+                                .delayElement(Duration.ofMillis(500))
+                                .map(body -> List.of("HTTP/1.1", "200", "OK", body)))
+                .block();
+
+        List<String> list = new ArrayList<>();
+        values.forEach(list::add);
+        Latency latency = Latency.parse(list.get(3));
+        Assertions.assertTrue(latency.bodyDelay(1).toMillis() >= 20);
+        Assertions.assertTrue(latency.bodyDelay(1).toMillis() < 500);
+    }
+
+    @Test
+    void testUpstreamHeader() {
+        ResponseTemplate template = ResponseTemplate.decode("", List.of("HTTP/1.1", "200", "OK",
+                "X-Anystub-Latency: upstream", "@anystub-latency: 10.000 30.000", "body"));
+
+        Assertions.assertEquals("upstream", template.headers().getFirst("X-Anystub-Latency"));
+        Assertions.assertEquals(Duration.ofMillis(10), template.latency().headersDelay(1));
+        Assertions.assertEquals("TEXT @anystub-latency: 1 2", Util.bodyToString("@anystub-latency: 1 2".getBytes()));
+    }
+}
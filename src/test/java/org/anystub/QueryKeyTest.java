@@ -0,0 +1,56 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+class QueryKeyTest {
+
+    @Test
+    void testEquality() {
+        QueryKey key1 = new QueryKey("test.yml", List.of("GET", "HTTP/1.1", "http://localhost"));
+        QueryKey key2 = new QueryKey("test.yml", List.of("GET", "HTTP/1.1", "http://localhost"));
+
+        Assertions.assertEquals(key1, key2);
+        Assertions.assertEquals(key1.hashCode(), key2.hashCode());
+        Assertions.assertEquals(key1.toString(), key2.toString());
+        Assertions.assertEquals(32, key1.toString().length());
+    }
+
+    @Test
+    void testDifferentKeys() {
+        QueryKey key = new QueryKey("test.yml", List.of("GET", "http://localhost"));
+
+        Assertions.assertNotEquals(key, new QueryKey("other.yml", List.of("GET", "http://localhost")));
+        Assertions.assertNotEquals(key, new QueryKey("test.yml", List.of("POST", "http://localhost")));
+        Assertions.assertNotEquals(key, new QueryKey("test.yml", List.of("GET", "http://localhost", "")));
+        Assertions.assertNotEquals(new QueryKey("test.yml", List.of("ab", "c")),
+                new QueryKey("test.yml", List.of("a", "bc")));
+        Assertions.assertNotEquals(new QueryKey(null, List.of("GET")),
+                new QueryKey("", List.of("GET")));
+    }
+
+    @Test
+    void testNullValues() {
+        Assertions.assertEquals(new QueryKey(null, Arrays.asList("GET", null)),
+                new QueryKey(null, Arrays.asList("GET", null)));
+        Assertions.assertNotEquals(new QueryKey("test.yml", Arrays.asList("GET", null)),
+                new QueryKey("test.yml", Arrays.asList("GET", "")));
+    }
+
+    @Test
+    void testLargeBody() {
+        char[] chars = new char[1_000_000];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+        chars[chars.length - 1] = 'y';
+        String other = new String(chars);
+
+        Assertions.assertEquals(new QueryKey("test.yml", List.of("POST", body)),
+                new QueryKey("test.yml", List.of("POST", body)));
+        Assertions.assertNotEquals(new QueryKey("test.yml", List.of("POST", body)),
+                new QueryKey("test.yml", List.of("POST", other)));
+    }
+}
@@ -0,0 +1,112 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecordingSinkTest {
+
+    @Test
+    void testWritesOnClose(@TempDir Path dir) {
+        Path file = dir.resolve("stub.yml");
+
+        try (RecordingSink sink = new RecordingSink(2, 3)) {
+            // the queue of 2 overflows, the entries wait for the writer
+            Flux.range(0, 50)
+                    .parallel(4)
+                    .runOn(Schedulers.parallel())
+                    .flatMap(i -> sink.record(file.toString(), entry(i).getKeys(), Mono.just(entry(i).getValues())))
+                    .sequential()
+                    .blockLast();
+        }
+
+        List<StubEntry> entries = TextStub.read(file);
+        Assertions.assertEquals(50, entries.size());
+        Set<String> urls = new HashSet<>();
+        entries.forEach(entry -> urls.add(entry.getKeys().get(2)));
+        Assertions.assertEquals(50, urls.size());
+    }
+
+    @Test
+    void testFlush(@TempDir Path dir) {
+        Path file = dir.resolve("stub.yml");
+
+        try (RecordingSink sink = new RecordingSink()) {
+            sink.record(file.toString(), entry(1));
+            sink.flush();
+            Assertions.assertEquals(1, TextStub.read(file).size());
+
+            sink.record(file.toString(), entry(2));
+            sink.flush();
+            Assertions.assertEquals(List.of(entry(1).getKeys(), entry(2).getKeys()),
+                    List.of(TextStub.read(file).get(0).getKeys(), TextStub.read(file).get(1).getKeys()));
+        }
+    }
+
+    @Test
+    void testRecordMono(@TempDir Path dir) {
+        Path file = dir.resolve("stub.yml");
+        List<String> key = List.of("GET", "HTTP/1.1", "http://localhost:8081");
+
+        try (RecordingSink sink = new RecordingSink()) {
+            StepVerifier.create(sink.record(file.toString(), key, Mono.error(new IOException("refused"))))
+                    .verifyError(IOException.class);
+            sink.flush();
+        }
+
+        StubEntry entry = TextStub.read(file).get(0);
+        Assertions.assertEquals(List.of("java.io.IOException", "refused"), entry.getException());
+        Assertions.assertEquals(key, entry.getKeys());
+    }
+
+    @Test
+    void testFailure(@TempDir Path dir) {
+        RecordingSink sink = new RecordingSink();
+        sink.record(dir.toString(), entry(1));
+
+        Assertions.assertThrows(RuntimeException.class, sink::flush);
+        sink.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> sink.record(dir.toString(), entry(2)));
+    }
+
+    @Test
+    void testReplacesPreviousRun(@TempDir Path dir) {
+        Path file = dir.resolve("stub.yml");
+        TextStub.write(file, List.of(entry(0)));
+        Base base = mock(Base.class);
+        when(base.getFilePath()).thenReturn(file.toString());
+
+        try (RecordingSink sink = new RecordingSink()) {
+            sink.record(base, entry(1).getKeys(), Mono.just(entry(1).getValues())).block();
+            sink.flush();
+            sink.record(base, entry(2).getKeys(), Mono.just(entry(2).getValues())).block();
+            sink.flush();
+            Assertions.assertEquals(List.of(entry(1).getKeys(), entry(2).getKeys()),
+                    List.of(TextStub.read(file).get(0).getKeys(), TextStub.read(file).get(1).getKeys()));
+
+            Base next = mock(Base.class);
+            when(next.getFilePath()).thenReturn(file.toString());
+            sink.record(next, entry(3).getKeys(), Mono.just(entry(3).getValues())).block();
+            sink.flush();
+            Assertions.assertEquals(1, TextStub.read(file).size());
+        }
+    }
+
+    private static StubEntry entry(int i) {
+        return StubEntry.response(List.of("GET", "HTTP/1.1", "http://localhost:8080/" + i),
+                List.of("HTTP/1.1", "200", "OK", "body " + i));
+    }
+}
@@ -0,0 +1,156 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RequestCacheTest {
+
+    private Base base;
+
+    @BeforeEach
+    void setup() {
+        base = mock(Base.class);
+        when(base.seekInCache()).thenReturn(true);
+        when(base.getFilePath()).thenReturn("test.yml");
+    }
+
+    @Test
+    void testHitAndMiss() {
+        RequestCache<String> cache = new RequestCache<>();
+
+        Mono<String> first = cache.track(base, List.of("GET", "http://localhost"), Mono.just("1"));
+        Mono<String> second = cache.track(base, List.of("GET", "http://localhost"), Mono.just("2"));
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, cache.missCount());
+        Assertions.assertEquals(1, cache.hitCount());
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testNoCacheMode() {
+        when(base.seekInCache()).thenReturn(false);
+        RequestCache<String> cache = new RequestCache<>();
+
+        Mono<String> candidate = Mono.just("1");
+        Assertions.assertSame(candidate, cache.track(base, List.of("GET"), candidate));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testSizeLimit() {
+        RequestCache<String> cache = new RequestCache<>(2, Long.MAX_VALUE, Duration.ZERO);
+
+        cache.track(base, List.of("1"), Mono.just("1"));
+        cache.track(base, List.of("2"), Mono.just("2"));
+        cache.track(base, List.of("1"), Mono.just("1"));
+        cache.track(base, List.of("3"), Mono.just("3"));
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.evictionCount());
+
+        // "2" is the least recently used
+        cache.track(base, List.of("1"), Mono.just("1"));
+        Assertions.assertEquals(2, cache.hitCount());
+        cache.track(base, List.of("2"), Mono.just("2"));
+        Assertions.assertEquals(4, cache.missCount());
+    }
+
+    @Test
+    void testWeightLimit() {
+        RequestCache<String> cache = new RequestCache<>(100, 10, Duration.ZERO);
+
+        cache.track(base, List.of("POST", "body1"), Mono.just("1"));
+        cache.track(base, List.of("POST", "body2"), Mono.just("2"));
+
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    void testTtl() {
+        AtomicLong clock = new AtomicLong();
+        RequestCache<String> cache = new RequestCache<>(100, Long.MAX_VALUE, Duration.ofMillis(10), clock::get);
+
+        Mono<String> first = cache.track(base, List.of("GET"), Mono.just("1"));
+        clock.addAndGet(Duration.ofMillis(10).toNanos());
+        Assertions.assertSame(first, cache.track(base, List.of("GET"), Mono.just("2")));
+
+        clock.incrementAndGet();
+        Mono<String> second = cache.track(base, List.of("GET"), Mono.just("2"));
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    void testErrorsAreDropped() {
+        RequestCache<String> cache = new RequestCache<>();
+
+        Mono<String> failed = cache.track(base, List.of("GET"), Mono.error(new RuntimeException("failed")));
+        StepVerifier.create(failed)
+                .verifyError();
+
+        Assertions.assertEquals(0, cache.size());
+        Mono<String> next = cache.track(base, List.of("GET"), Mono.just("ok"));
+        StepVerifier.create(next)
+                .expectNext("ok")
+                .verifyComplete();
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testCancelledAreDropped() {
+        RequestCache<String> cache = new RequestCache<>();
+
+        Mono<String> never = cache.track(base, List.of("GET"), Mono.never());
+        StepVerifier.create(never)
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testSharedSurvivesOneCancel() {
+        RequestCache<String> cache = new RequestCache<>();
+        Sinks.One<String> response = Sinks.one();
+
+        Mono<String> shared = cache.track(base, List.of("GET"), response.asMono());
+        Disposable first = shared.subscribe();
+        Disposable second = shared.subscribe();
+
+        first.dispose();
+        Assertions.assertEquals(1, cache.size());
+        second.dispose();
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testCancelAfterResponse() {
+        RequestCache<String> cache = new RequestCache<>();
+        Sinks.One<String> response = Sinks.one();
+
+        Mono<String> shared = cache.track(base, List.of("GET"), response.asMono().cache());
+        Disposable waiting = shared.subscribe();
+        StepVerifier.create(shared)
+                .then(() -> response.tryEmitValue("ok"))
+                .expectNext("ok")
+                .verifyComplete();
+        waiting.dispose();
+
+        Assertions.assertEquals(1, cache.size());
+    }
+}
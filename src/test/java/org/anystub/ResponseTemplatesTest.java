@@ -0,0 +1,72 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class ResponseTemplatesTest {
+
+    private static final List<String> KEY = List.of("GET", "HTTP/1.1", "http://localhost:8080");
+
+    @Test
+    void testDecode() {
+        ResponseTemplate template = ResponseTemplate.decode("file", List.of("HTTP/1.1", "201", "Created",
+                "Content-Type: text/plain", "X-Id: 1", "body"));
+
+        Assertions.assertEquals(201, template.status());
+        Assertions.assertEquals("text/plain", template.headers().getFirst("Content-Type"));
+        Assertions.assertEquals("1", template.headers().getFirst("X-Id"));
+        Assertions.assertTrue(template.hasBody());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> template.headers().add("X-Id", "2"));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(template.body(0).map(ResponseTemplatesTest::text))
+                    .expectNext("body")
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void testNoBody() {
+        ResponseTemplate template = ResponseTemplate.decode("file", List.of("HTTP/1.1", "204", "No Content"));
+
+        Assertions.assertEquals(204, template.status());
+        Assertions.assertTrue(template.headers().isEmpty());
+        Assertions.assertFalse(template.hasBody());
+    }
+
+    @Test
+    void testReuse() {
+        ResponseTemplates templates = new ResponseTemplates();
+        List<String> values = List.of("HTTP/1.1", "200", "OK", "body");
+
+        ResponseTemplate template = templates.get("file", KEY, values);
+        Assertions.assertSame(template, templates.get("file", KEY, new ArrayList<>(values)));
+        Assertions.assertEquals(1, templates.size());
+
+        List<String> changed = List.of("HTTP/1.1", "200", "OK", "other");
+        Assertions.assertNotSame(template, templates.get("file", KEY, changed));
+        Assertions.assertNotSame(template, templates.get("file", KEY, List.of("HTTP/1.1", "200", "OK", new String("body"))));
+    }
+
+    @Test
+    void testEviction() {
+        ResponseTemplates templates = new ResponseTemplates(2);
+        List<String> values = List.of("HTTP/1.1", "200", "OK");
+
+        templates.get("file", List.of("1"), values);
+        templates.get("file", List.of("2"), values);
+        templates.get("file", List.of("3"), values);
+
+        Assertions.assertEquals(2, templates.size());
+    }
+
+    private static String text(DataBuffer buffer) {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.MockedStatic;
+
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(AnyStubExtension.class)
+class SettingsRegistryTest {
+
+    @Test
+    @AnyStubId(filename = "registry")
+    void testDiscoveredOncePerTest() {
+        try (MockedStatic<AnyStubFileLocator> locator = mockStatic(AnyStubFileLocator.class);
+             MockedStatic<AnySettingsHttpExtractor> extractor = mockStatic(AnySettingsHttpExtractor.class)) {
+            locator.when(AnyStubFileLocator::discoverFile).thenCallRealMethod();
+
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertEquals("registry", SettingsRegistry.anyStubId().filename());
+                Assertions.assertNull(SettingsRegistry.settingsHttp());
+            }
+
+            locator.verify(AnyStubFileLocator::discoverFile, times(1));
+            extractor.verify(AnySettingsHttpExtractor::httpSettings, times(1));
+        }
+    }
+
+    @Test
+    @AnyStubId(filename = "registry")
+    void testSettingsOfTheTest() {
+        Assertions.assertEquals("registry", SettingsRegistry.anyStubId().filename());
+        // the settings are not looked up on the stack again
+        Assertions.assertEquals("registry", helper().filename());
+    }
+
+    @Test
+    void testNoCacheOutsideTest() {
+        SettingsRegistry.exit();
+        try (MockedStatic<AnyStubFileLocator> locator = mockStatic(AnyStubFileLocator.class)) {
+            SettingsRegistry.anyStubId();
+            SettingsRegistry.anyStubId();
+
+            locator.verify(AnyStubFileLocator::discoverFile, times(2));
+        }
+    }
+
+    @Test
+    @AnyStubId(filename = "registry")
+    void testDroppedAfterTest() {
+        Assertions.assertEquals("registry", SettingsRegistry.anyStubId().filename());
+        SettingsRegistry.exit();
+
+        Assertions.assertEquals("helper", helper().filename());
+        Assertions.assertEquals("registry", SettingsRegistry.anyStubId().filename());
+    }
+
+    @AnyStubId(filename = "helper")
+    private static AnyStubId helper() {
+        return SettingsRegistry.anyStubId();
+    }
+}
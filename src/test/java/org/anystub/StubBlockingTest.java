@@ -0,0 +1,121 @@
+package org.anystub;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static org.anystub.Util.anystubContext;
+
+/**
+ * the stub files are read and written off the event loop,
+ * BlockHound fails a blocking call made from a netty or a parallel thread.
+ * it runs in the separate surefire execution "blockhound", see pom.xml
+ */
+@WireMockTest(httpPort = 8080)
+class StubBlockingTest {
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install();
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmAll, filename = "target/anystub/StubBlockingTest-record.yml")
+    void testRecordOffEventLoop(WireMockRuntimeInfo wmRuntimeInfo) {
+        new File("target/anystub/StubBlockingTest-record.yml").delete();
+        stubFor(WireMock.get("/blocking").willReturn(ok()
+                .withBody("{\"test\":\"ok\"}")));
+
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new StubClientHttpConnector(new ReactorClientHttpConnector()))
+                .build();
+
+        String body = webClient.get()
+                .uri("http://localhost:" + wmRuntimeInfo.getHttpPort() + "/blocking")
+                .retrieve()
+                .bodyToMono(String.class)
+                .contextWrite(anystubContext())
+                .block();
+
+        Assertions.assertEquals("{\"test\":\"ok\"}", body);
+        Assertions.assertTrue(new File("target/anystub/StubBlockingTest-record.yml").exists());
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmAll, filename = "target/anystub/StubBlockingTest-filter.yml")
+    void testFilterRecordOffEventLoop(WireMockRuntimeInfo wmRuntimeInfo) {
+        new File("target/anystub/StubBlockingTest-filter.yml").delete();
+        stubFor(WireMock.get("/blocking").willReturn(ok()
+                .withBody("{\"test\":\"ok\"}")));
+
+        WebClient webClient = WebClient.builder()
+                .filter(new StubExchangeFilterFunction())
+                .build();
+
+        String body = webClient.get()
+                .uri("http://localhost:" + wmRuntimeInfo.getHttpPort() + "/blocking")
+                .retrieve()
+                .bodyToMono(String.class)
+                .contextWrite(anystubContext())
+                .block();
+
+        Assertions.assertEquals("{\"test\":\"ok\"}", body);
+        Assertions.assertTrue(new File("target/anystub/StubBlockingTest-filter.yml").exists());
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    void testReplayOnEventLoop(WireMockRuntimeInfo wmRuntimeInfo) {
+        replayOnEventLoop(wmRuntimeInfo);
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    @AnySettingsFlux(index = true)
+    void testIndexedReplayOnEventLoop(WireMockRuntimeInfo wmRuntimeInfo) {
+        replayOnEventLoop(wmRuntimeInfo);
+    }
+
+    private static void replayOnEventLoop(WireMockRuntimeInfo wmRuntimeInfo) {
+        stubFor(WireMock.get("/plain").willReturn(ok()
+                .withBody("plain")));
+
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new StubClientHttpConnector(new ReactorClientHttpConnector()))
+                .build();
+
+        // the first replay loads the stub file and builds the index, the second one replays the loaded stub
+        for (int i = 0; i < 2; i++) {
+            String body = WebClient.create()
+                    .get()
+                    .uri("http://localhost:" + wmRuntimeInfo.getHttpPort() + "/plain")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    // on the event loop which delivers the plain response
+                    .flatMap(plain -> replay(webClient))
+                    .contextWrite(anystubContext())
+                    .block();
+
+            Assertions.assertEquals("replayed", body);
+        }
+    }
+
+    private static Mono<String> replay(WebClient webClient) {
+        Assertions.assertTrue(Thread.currentThread().getName().startsWith("reactor-http"));
+        return webClient.get()
+                .uri("http://localhost:8080/replay")
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+}
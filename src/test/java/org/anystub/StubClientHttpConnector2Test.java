@@ -10,6 +10,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -19,15 +21,22 @@ import reactor.test.StepVerifier;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
@@ -198,6 +207,34 @@ class StubClientHttpConnector2Test {
 
     }
 
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmAll)
+    @AnySettingsHttp(bodyTrigger = "")
+    void testSingleBodyEncoding(WireMockRuntimeInfo wmRuntimeInfo) {
+        stubFor(WireMock.post("/upload")
+                .willReturn(ok().withBody("done")));
+
+        AtomicInteger subscriptions = new AtomicInteger();
+        Flux<String> body = Flux.defer(() -> {
+            subscriptions.incrementAndGet();
+            return Flux.just("part1,", "part2,", "part3");
+        });
+
+        String block = webClient.post()
+                .uri("http://localhost:" + wmRuntimeInfo.getHttpPort() + "/upload")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(body, String.class)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+
+        Assertions.assertEquals("done", block);
+        Assertions.assertEquals(1, subscriptions.get());
+        verify(postRequestedFor(urlPathEqualTo("/upload"))
+                .withHeader("Content-Type", new EqualToPattern("text/plain"))
+                .withRequestBody(new EqualToPattern("part1,part2,part3")));
+    }
+
     @Test
     @AnyStubId(filename = "testUseSaved", requestMode = RequestMode.rmNone)
     @AnySettingsHttp(headers = "Accept", bodyTrigger = "")
@@ -646,6 +683,95 @@ class StubClientHttpConnector2Test {
     }
 
 
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    @AnySettingsFlux(chunkSize = 4)
+    void testChunkedReplay() {
+        List<String> chunks = webClient.get()
+                .uri("http://localhost:8080/chunked")
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .map(buffer -> {
+                    String chunk = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return chunk;
+                })
+                .collectList()
+                .block();
+
+        Assertions.assertEquals(List.of("line", "1-li", "ne2-", "line", "3"), chunks);
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    @AnySettingsFlux(index = true)
+    void testIndexedReplay() {
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("first", webClient.get()
+                    .uri("http://localhost:8080/indexed/1")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block());
+            Assertions.assertEquals("second", webClient.get()
+                    .uri("http://localhost:8080/indexed/2")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block());
+        }
+
+        Assertions.assertEquals(2, StubIndex.of(locate()).size());
+        Assertions.assertEquals(0, locate().times());
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    @AnySettingsFlux(latencyScale = 1)
+    void testLatencyReplay() {
+        StepVerifier.withVirtualTime(() -> webClient.get()
+                        .uri("http://localhost:8080/slow")
+                        .retrieve()
+                        .toEntity(String.class))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(4900))
+                .thenAwait(Duration.ofMillis(100))
+                .assertNext(entity -> {
+                    Assertions.assertEquals("slow", entity.getBody());
+                    Assertions.assertFalse(entity.getHeaders().containsKey(Latency.NAME));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    void testCharsetReplay() {
+        String text = webClient.get()
+                .uri("http://localhost:8080/latin1")
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+        Assertions.assertEquals("caf\u00e9", text);
+
+        byte[] bytes = webClient.get()
+                .uri("http://localhost:8080/latin1")
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .block();
+        Assertions.assertArrayEquals(new byte[]{'c', 'a', 'f', (byte) 0xe9}, bytes);
+    }
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmNone)
+    void testRepeatedHeaderReplay() {
+        ResponseEntity<String> entity = webClient.get()
+                .uri("http://localhost:8080/repeated")
+                .retrieve()
+                .toEntity(String.class)
+                .block();
+
+        Assertions.assertEquals("ok", entity.getBody());
+        Assertions.assertEquals(List.of("two"), entity.getHeaders().get("X-Test"));
+    }
+
     @Test
     @AnyStubId(requestMode = RequestMode.rmAll)
     void testFailedConnection(WireMockRuntimeInfo wmRuntimeInfo) {
@@ -664,4 +790,30 @@ class StubClientHttpConnector2Test {
         Assertions.assertEquals(1, times);
     }
 
-}
\ No newline at end of file
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmAll, filename = "target/anystub/StubClientHttpConnector2Test-recordAsync.yml")
+    @AnySettingsFlux(recordAsync = true)
+    void testRecordAsyncTwice() {
+        Path file = Paths.get("target/anystub/StubClientHttpConnector2Test-recordAsync.yml");
+        // the entries of a previous run
+        TextStub.write(file, List.of(StubEntry.response(List.of("GET", "HTTP/1.1", "http://localhost:8080/async/0"),
+                List.of("HTTP/1.1", "200", "OK", "old"))));
+
+        for (int i = 0; i < 2; i++) {
+            stubFor(WireMock.get("/async/" + i).willReturn(ok().withBody("new")));
+            String body = webClient.get()
+                    .uri("http://localhost:8080/async/" + i)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block();
+            Assertions.assertEquals("new", body);
+        }
+        RecordingSink.flushShared();
+
+        List<StubEntry> entries = TextStub.read(file);
+        Assertions.assertEquals(2, entries.size());
+        for (StubEntry entry : entries) {
+            Assertions.assertEquals("new", entry.getValues().get(entry.getValues().size() - 1));
+        }
+    }
+}
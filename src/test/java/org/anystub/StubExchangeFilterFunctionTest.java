@@ -15,9 +15,12 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
@@ -241,4 +244,31 @@ class StubExchangeFilterFunctionTest {
 
         Assertions.assertEquals(1, times);
     }
-}
\ No newline at end of file
+
+    @Test
+    @AnyStubId(requestMode = RequestMode.rmAll, filename = "target/anystub/StubExchangeFilterFunctionTest-recordAsync.yml")
+    @AnySettingsFlux(recordAsync = true)
+    void testEffRecordAsyncTwice() {
+        Path file = Paths.get("target/anystub/StubExchangeFilterFunctionTest-recordAsync.yml");
+        // the entries of a previous run
+        TextStub.write(file, List.of(StubEntry.response(List.of("GET", "HTTP/1.1", "http://localhost:8080/async/0"),
+                List.of("HTTP/1.1", "200", "OK", "old"))));
+
+        for (int i = 0; i < 2; i++) {
+            stubFor(WireMock.get("/async/" + i).willReturn(ok().withBody("new")));
+            String body = webClient.get()
+                    .uri("http://localhost:8080/async/" + i)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block();
+            Assertions.assertEquals("new", body);
+        }
+        RecordingSink.flushShared();
+
+        List<StubEntry> entries = TextStub.read(file);
+        Assertions.assertEquals(2, entries.size());
+        for (StubEntry entry : entries) {
+            Assertions.assertEquals("new", entry.getValues().get(entry.getValues().size() - 1));
+        }
+    }
+}
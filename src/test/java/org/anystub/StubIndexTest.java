@@ -0,0 +1,97 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StubIndexTest {
+
+    @Test
+    void testLoad() {
+        StubIndex index = StubIndex.load("src/test/resources/anystub/StubClientHttpConnector2Test-testIndexedReplay.yml");
+
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "Content-Type: text/plain", "second"),
+                index.get(List.of("GET", "HTTP/1.1", "http://localhost:8080/indexed/2")));
+        Assertions.assertNull(index.get(List.of("GET", "HTTP/1.1", "http://localhost:8080/indexed/3")));
+    }
+
+    @Test
+    void testSkipsExceptions() {
+        StubIndex index = StubIndex.load("src/test/resources/anystub/StubClientHttpConnector2Test-testFailedConnection.yml");
+
+        Assertions.assertEquals(0, index.size());
+    }
+
+    @Test
+    void testPut() {
+        StubIndex index = StubIndex.load("src/test/resources/anystub/missing.yml");
+        List<String> key = List.of("GET", "HTTP/1.1", "http://localhost:8080/");
+
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertNull(index.get(key));
+
+        index.put(key, List.of("HTTP/1.1", "200", "OK"));
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK"), index.get(key));
+    }
+
+    @Test
+    void testFollowsBase(@TempDir Path dir) {
+        Path file = dir.resolve("stub.yml");
+        List<String> key = List.of("GET", "HTTP/1.1", "http://localhost:8080/");
+        TextStub.append(file, List.of(StubEntry.response(key, List.of("HTTP/1.1", "200", "OK", "first"))));
+        Base base = mock(Base.class);
+        when(base.getFilePath()).thenReturn(file.toString());
+
+        StubIndex index = StubIndex.of(base);
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "first"), index.get(key));
+        Assertions.assertSame(index, StubIndex.current(base));
+
+        // a record updates the index in place, the file is not read again
+        index.put(key, List.of("HTTP/1.1", "200", "OK", "recorded"));
+        TextStub.append(file, List.of(StubEntry.response(List.of("GET"), List.of("HTTP/1.1", "200", "OK"))));
+        Assertions.assertSame(index, StubIndex.current(base));
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "recorded"), StubIndex.of(base).get(key));
+
+        Base other = mock(Base.class);
+        when(other.getFilePath()).thenReturn(file.toString());
+        Assertions.assertNull(StubIndex.current(other));
+        Assertions.assertNotSame(index, StubIndex.of(other));
+
+        StubIndex.invalidate(other);
+        Assertions.assertNull(StubIndex.current(other));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSameFingerprint() throws ReflectiveOperationException {
+        StubIndex index = StubIndex.load("src/test/resources/anystub/missing.yml");
+        List<String> first = List.of("GET", "HTTP/1.1", "http://localhost:8080/1");
+        List<String> second = List.of("GET", "HTTP/1.1", "http://localhost:8080/2");
+        index.put(first, List.of("HTTP/1.1", "200", "OK", "first"));
+
+        // moves the entry under the fingerprint of the second key, as if the keys collide
+        Field field = StubIndex.class.getDeclaredField("entries");
+        field.setAccessible(true);
+        Map<QueryKey, Object> entries = (Map<QueryKey, Object>) field.get(index);
+        entries.put(new QueryKey(index.getFilePath(), second), entries.remove(new QueryKey(index.getFilePath(), first)));
+
+        Assertions.assertNull(index.get(second));
+        index.put(second, List.of("HTTP/1.1", "200", "OK", "second"));
+        index.put(first, List.of("HTTP/1.1", "200", "OK", "first"));
+
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "second"), index.get(second));
+        index.put(second, List.of("HTTP/1.1", "200", "OK", "again"));
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertEquals(List.of("HTTP/1.1", "200", "OK", "again"), index.get(second));
+    }
+}
@@ -0,0 +1,84 @@
+package org.anystub;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StubMetricsTest {
+
+    @AfterEach
+    void reset() {
+        StubMetrics.use(null);
+    }
+
+    @Test
+    void testDefault() {
+        Assertions.assertSame(StubMetrics.NOOP, StubMetrics.current());
+    }
+
+    @Test
+    void testCacheHit() {
+        List<StubMetrics.Outcome> outcomes = new ArrayList<>();
+        StubMetrics.use(new StubMetrics() {
+            @Override
+            public void request(String filePath, RequestMode mode, Outcome outcome) {
+                Assertions.assertEquals("test.yml", filePath);
+                Assertions.assertEquals(RequestMode.rmNew, mode);
+                outcomes.add(outcome);
+            }
+        });
+        Base base = mock(Base.class);
+        when(base.seekInCache()).thenReturn(true);
+        when(base.getFilePath()).thenReturn("test.yml");
+        when(base.getRequestMode()).thenReturn(RequestMode.rmNew);
+        RequestCache<String> cache = new RequestCache<>();
+
+        cache.track(base, List.of("GET", "http://localhost"), Mono.just("1"));
+        cache.track(base, List.of("GET", "http://localhost"), Mono.just("2"));
+
+        Assertions.assertEquals(List.of(StubMetrics.Outcome.CACHED), outcomes);
+    }
+
+    @Test
+    void testMicrometer() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        StubMetrics metrics = new MicrometerStubMetrics(registry);
+
+        metrics.request("src/test/resources/anystub/test.yml", RequestMode.rmNew, StubMetrics.Outcome.REPLAYED);
+        metrics.request("test.yml", RequestMode.rmNew, StubMetrics.Outcome.REPLAYED);
+        metrics.request("test.yml", RequestMode.rmNew, StubMetrics.Outcome.RECORDED);
+        metrics.time("test.yml", RequestMode.rmNew, StubMetrics.Phase.KEY, 1_000_000);
+
+        Assertions.assertEquals(2, registry.get(MicrometerStubMetrics.REQUESTS)
+                .tags("file", "test.yml", "mode", "rmNew", "outcome", "replayed")
+                .counter().count());
+        Assertions.assertEquals(1, registry.get(MicrometerStubMetrics.REQUESTS)
+                .tags("outcome", "recorded")
+                .counter().count());
+        Assertions.assertEquals(1, registry.get(MicrometerStubMetrics.PHASES)
+                .tags("phase", "key")
+                .timer().totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testMicrometerFileTag() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        StubMetrics metrics = new MicrometerStubMetrics(registry, filePath -> filePath);
+
+        metrics.request("src/test/resources/anystub/test.yml", RequestMode.rmNew, StubMetrics.Outcome.REPLAYED);
+
+        Assertions.assertEquals(1, registry.get(MicrometerStubMetrics.REQUESTS)
+                .tags("file", "src/test/resources/anystub/test.yml")
+                .counter().count());
+    }
+}
@@ -0,0 +1,59 @@
+package org.anystub;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class StubPhaseEventTest {
+
+    @Test
+    void testDisabled() {
+        Assertions.assertSame(StubPhaseEvent.NONE, StubPhaseEvent.start(StubPhaseEvent.LOOKUP));
+
+        Mono<String> source = Mono.just("value");
+        Assertions.assertSame(source, StubPhaseEvent.timed(StubPhaseEvent.KEY, event -> source));
+    }
+
+    @Test
+    void testRecorded(@TempDir Path dir) throws IOException {
+        List<String> key = List.of("GET", "http://localhost/");
+        Path file = dir.resolve("phases.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.anystub.Phase").withThreshold(Duration.ZERO);
+            recording.start();
+
+            StubPhaseEvent.timed(StubPhaseEvent.KEY, event -> Mono.just(key)
+                            .doOnNext(k -> event.key("phase.yml", k)))
+                    .block();
+            StubPhaseEvent.start(StubPhaseEvent.DECODE)
+                    .key("phase.yml", key)
+                    .responseBodySize(42)
+                    .finish();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("org.anystub.Phase"))
+                .collect(Collectors.toList());
+
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals(StubPhaseEvent.KEY, events.get(0).getString("phase"));
+        Assertions.assertEquals("phase.yml", events.get(0).getString("file"));
+        Assertions.assertEquals(new QueryKey("phase.yml", key).toString(), events.get(0).getString("key"));
+        Assertions.assertEquals(-1, events.get(0).getLong("responseBodySize"));
+        Assertions.assertEquals(StubPhaseEvent.DECODE, events.get(1).getString("phase"));
+        Assertions.assertEquals(42, events.get(1).getLong("responseBodySize"));
+    }
+}
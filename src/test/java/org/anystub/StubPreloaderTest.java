@@ -0,0 +1,91 @@
+package org.anystub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StubPreloaderTest {
+
+    @Test
+    void testParallelLoad() {
+        CountDownLatch latch = new CountDownLatch(3);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        StubPreloader.Report report = StubPreloader.preload(List.of("a.yml", "b.yml", "c.yml"), name -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+            try {
+                // every file waits for the others, so they are loaded at the same time
+                Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            Base base = mock(Base.class);
+            when(base.getFilePath()).thenReturn("anystub/" + name);
+            when(base.isNew()).thenReturn(true);
+            return base;
+        }, 3);
+
+        Assertions.assertEquals(3, threads.size());
+        Assertions.assertEquals(List.of("anystub/a.yml", "anystub/b.yml", "anystub/c.yml"),
+                report.getLoads().stream().map(StubPreloader.Load::getFile).collect(Collectors.toList()));
+        Assertions.assertTrue(report.toString().startsWith("preloaded 3 stubs in "));
+    }
+
+    @Test
+    void testLoadedAndFailed() {
+        Base loaded = mock(Base.class);
+        when(loaded.getFilePath()).thenReturn("loaded.yml");
+        when(loaded.isNew()).thenReturn(false);
+
+        StubPreloader.Report report = StubPreloader.preload(List.of("loaded.yml", "broken.yml"), name -> {
+            if (name.equals("broken.yml")) {
+                throw new IllegalStateException("broken");
+            }
+            return loaded;
+        }, 1);
+
+        verify(loaded, never()).init();
+        Assertions.assertNull(report.getLoads().get(0).getFailure());
+        Assertions.assertEquals("broken.yml", report.getLoads().get(1).getFile());
+        Assertions.assertEquals("broken", report.getLoads().get(1).getFailure().getMessage());
+    }
+
+    @Test
+    void testOutsideOfDirectory(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("found.yml"), "");
+        Files.writeString(dir.resolve("elsewhere.yml"), "");
+        Base found = mock(Base.class);
+        when(found.getFilePath()).thenReturn(dir.resolve("found.yml").toString());
+        // located in the default directory of the stubs, where the file does not exist
+        Base empty = mock(Base.class);
+        when(empty.getFilePath()).thenReturn("src/test/resources/anystub/elsewhere.yml");
+        when(empty.isNew()).thenReturn(true);
+
+        StubPreloader.Report report = StubPreloader.preload(dir,
+                name -> name.equals("found.yml") ? found : empty, 1);
+
+        verify(empty, never()).init();
+        Assertions.assertEquals(2, report.getLoads().size());
+        Assertions.assertEquals("elsewhere.yml", report.getLoads().get(0).getFile());
+        Assertions.assertNotNull(report.getLoads().get(0).getFailure());
+        Assertions.assertNull(report.getLoads().get(1).getFailure());
+        Assertions.assertTrue(report.toString().startsWith("preloaded 1 stubs in "));
+        Assertions.assertTrue(report.toString().contains(", 1 failed"));
+    }
+}
@@ -0,0 +1,45 @@
+package org.anystub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+class StubSchedulersTest {
+
+    @AfterEach
+    void reset() {
+        StubSchedulers.usePersistence(null);
+    }
+
+    @Test
+    void testDefault() {
+        Assertions.assertSame(Schedulers.boundedElastic(), StubSchedulers.persistence());
+
+        StubSchedulers.usePersistence(Schedulers.single());
+        Assertions.assertSame(Schedulers.single(), StubSchedulers.persistence());
+
+        StubSchedulers.usePersistence(null);
+        Assertions.assertSame(Schedulers.boundedElastic(), StubSchedulers.persistence());
+    }
+
+    @Test
+    void testVirtualThreads() throws Exception {
+        boolean supported = Runtime.version().feature() >= 21;
+        Assertions.assertEquals(supported, StubSchedulers.virtualThreadsSupported());
+        Assertions.assertEquals(supported, StubSchedulers.useVirtualThreads());
+
+        Thread thread = Mono.fromCallable(Thread::currentThread)
+                .subscribeOn(StubSchedulers.persistence())
+                .block();
+
+        if (supported) {
+            Assertions.assertNotSame(Schedulers.boundedElastic(), StubSchedulers.persistence());
+            Assertions.assertEquals(true, Thread.class.getMethod("isVirtual").invoke(thread));
+        } else {
+            Assertions.assertSame(Schedulers.boundedElastic(), StubSchedulers.persistence());
+            Assertions.assertTrue(thread.getName().startsWith("boundedElastic"));
+        }
+    }
+}
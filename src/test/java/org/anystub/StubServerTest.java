@@ -0,0 +1,76 @@
+package org.anystub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class StubServerTest {
+
+    private StubServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setup(@TempDir Path dir) throws IOException {
+        Path stub = dir.resolve("server.yml");
+        Files.writeString(stub, "exception: []\n" +
+                "keys: [GET, HTTP/1.1, 'http://api.example.com/items?id=1']\n" +
+                "values: [HTTP/1.1, '200', OK, 'Content-Type: application/json', 'Content-Length: 11', '{\"id\": \"1\"}']\n" +
+                "---\n" +
+                "exception: []\n" +
+                "keys: [GET, HTTP/1.1, 'http://api.example.com/empty']\n" +
+                "values: [HTTP/1.1, '204', No Content]\n" +
+                "---\n" +
+                "exception: []\n" +
+                "keys: [GET, HTTP/1.1, 'http://api.example.com']\n" +
+                "values: [HTTP/1.1, '200', OK, 'Content-Type: text/plain', root]\n");
+        server = new StubServer(List.of(stub.toString()), StubServerTest.class, "http://api.example.com/")
+                .start("127.0.0.1", 0);
+    }
+
+    @AfterEach
+    void teardown() {
+        server.close();
+    }
+
+    @Test
+    void testReplay() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/items?id=1");
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("{\"id\": \"1\"}", response.body());
+        Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+
+        Assertions.assertEquals(204, get("/empty").statusCode());
+    }
+
+    @Test
+    void testRoot() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/");
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("root", response.body());
+    }
+
+    @Test
+    void testMissing() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/items?id=2");
+
+        Assertions.assertEquals(404, response.statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
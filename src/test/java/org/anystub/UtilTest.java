@@ -1,21 +1,34 @@
 package org.anystub;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 import reactor.test.scheduler.VirtualTimeScheduler;
+import reactor.util.context.Context;
 
 import java.io.File;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.util.List;
 
 import static java.util.Arrays.asList;
 import static org.anystub.Util.anystubContext;
 import static org.anystub.Util.extractBase;
+import static org.mockito.Mockito.mockStatic;
 import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.ALLOW;
 import static org.springframework.http.HttpHeaders.REFERER;
@@ -76,6 +89,25 @@ class UtilTest {
     }
 
 
+    @Test
+    @AnyStubId(filename = "lazyOptions")
+    @AnySettingsHttp(headers = "Accept")
+    void testLazyOptions() {
+        AnyStubId anyStubId = SettingsRegistry.anyStubId();
+        AnySettingsHttp settingsHttp = SettingsRegistry.settingsHttp();
+        Context context = Context.of(AnyStubId.class, anyStubId, AnySettingsHttp.class, settingsHttp);
+
+        try (MockedStatic<AnyStubFileLocator> locator = mockStatic(AnyStubFileLocator.class);
+             MockedStatic<AnySettingsHttpExtractor> extractor = mockStatic(AnySettingsHttpExtractor.class)) {
+
+            Assertions.assertSame(anyStubId, Util.extractOptions(context));
+            Assertions.assertSame(settingsHttp, Util.extractHttpOptions(context));
+
+            locator.verifyNoInteractions();
+            extractor.verifyNoInteractions();
+        }
+    }
+
     @Test
     void testNoExceptions() {
         Assertions.assertDoesNotThrow(()-> {
@@ -84,6 +116,114 @@ class UtilTest {
     }
 
 
+    @Test
+    void testExtractBytesMono() {
+        List<NettyDataBuffer> buffers = List.of(pooled("chunk1,"), pooled("chunk2,"), pooled("chunk3"));
+
+        StepVerifier.create(Util.extractBytesMono(Flux.fromIterable(buffers)))
+                .expectNextMatches(bytes -> "chunk1,chunk2,chunk3".equals(new String(bytes, StandardCharsets.UTF_8)))
+                .verifyComplete();
+
+        buffers.forEach(buffer -> Assertions.assertEquals(0, buffer.getNativeBuffer().refCnt()));
+
+        StepVerifier.create(Util.extractBytesMono(Flux.empty()))
+                .expectNextMatches(bytes -> bytes.length == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void testExtractBytesMonoReleasesOnError() {
+        NettyDataBuffer buffer = pooled("chunk");
+
+        StepVerifier.create(Util.extractBytesMono(Flux.<DataBuffer>just(buffer)
+                        .concatWith(Mono.error(new IllegalStateException("broken")))))
+                .verifyError(IllegalStateException.class);
+
+        Assertions.assertEquals(0, buffer.getNativeBuffer().refCnt());
+    }
+
+    @Test
+    void testIsHeader() {
+        List<String> lines = List.of(
+                "Content-Type: application/json",
+                "x-forward: test",
+                "Vary: Accept-Encoding, User-Agent",
+                "X: y",
+                "Content-Type: ",
+                "Content-Type:",
+                "Content-Type:ok",
+                ": value",
+                "Content Type: value",
+                "Content-Type: ok\nline2",
+                "Content-Type: ok\r",
+                "Content-Type: ok\u2028",
+                "Content-Type: ok\u0085",
+                "Content-Type: \uD83D\uDE00",
+                "Content-Type: a: b",
+                "\u00c4bc: value",
+                "{\"test\":\"ok\"}",
+                "",
+                "TEXT Content-Type: ok",
+                "BASE64 bGluZTEKbGluZTIBZW9t");
+
+        for (String line : lines) {
+            Assertions.assertEquals(Util.HEADER_PATTERN.matcher(line).matches(), Util.isHeader(line), line);
+            Assertions.assertEquals(line.matches(Util.HEADER_MASK), Util.isHeader(line), line);
+        }
+    }
+
+    @Test
+    void testChunkedBody() {
+        byte[] bytes = "line1-line2-line3".getBytes(StandardCharsets.UTF_8);
+
+        StepVerifier.create(Util.chunkedBody(bytes, 6, DefaultDataBufferFactory.sharedInstance)
+                                .map(buffer -> buffer.toString(StandardCharsets.UTF_8)), 0)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(10))
+                .thenRequest(1)
+                .expectNext("line1-")
+                .thenRequest(2)
+                .expectNext("line2-", "line3")
+                .verifyComplete();
+
+        StepVerifier.create(Util.chunkedBody(new byte[0], 6, DefaultDataBufferFactory.sharedInstance))
+                .verifyComplete();
+    }
+
+    @Test
+    void testReplayByteBuffer() {
+        ByteBuffer body = ByteBuffer.wrap("line1-line2-line3".getBytes(StandardCharsets.UTF_8));
+
+        StepVerifier.create(Util.replayBody(body, 6, DefaultDataBufferFactory.sharedInstance)
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8)))
+                .expectNext("line1-", "line2-", "line3")
+                .verifyComplete();
+        StepVerifier.create(Util.replayBody(body, 0, DefaultDataBufferFactory.sharedInstance)
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8)))
+                .expectNext("line1-line2-line3")
+                .verifyComplete();
+        Assertions.assertEquals(0, body.position());
+    }
+
+    @Test
+    void testDigestBody() throws Exception {
+        String body = "{\"msg\":\"caf\u00e9\"}".repeat(10_000);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+
+        String digest = Util.digestBody(body, 0);
+        Assertions.assertEquals(String.format("SHA-256:%064x", new BigInteger(1, expected)), digest);
+        Assertions.assertEquals(digest.length(), Util.digestBody("", 0).length());
+
+        Assertions.assertTrue(Util.digestBody(body, 8).startsWith(digest + " "));
+        Assertions.assertNotEquals(digest, Util.digestBody(body + " ", 0));
+    }
+
+    private static NettyDataBuffer pooled(String s) {
+        ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT.buffer();
+        byteBuf.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        return new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT).wrap(byteBuf);
+    }
+
     @Test
     void test() {
 